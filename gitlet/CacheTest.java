@@ -0,0 +1,72 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+/** Tests of the commit cache, through the hit and miss counts that
+ *  gitlet.cacheStats prints after each command.
+ *  @author Janani Sriram
+ */
+public class CacheTest {
+
+    /** Makes a repository in WORK with COMMITS commits after the initial
+     *  one, each adding a file. */
+    static void commits(File work, int commits) throws Exception {
+        DaemonTest.run(work, "init");
+        for (int i = 1; i <= commits; i += 1) {
+            Utils.writeContents(new File(work, "f" + i + ".txt"), i + "\n");
+            DaemonTest.run(work, "add", "f" + i + ".txt");
+            DaemonTest.run(work, "commit", "c" + i);
+        }
+    }
+
+    /** A fresh JVM starts with empty caches and reads each commit of
+     *  the history log walks once. */
+    @Test
+    public void coldProcessMissesOncePerCommit() throws Exception {
+        File work = ChunkerTest.tempDir();
+        try {
+            commits(work, 4);
+            assertArrayEquals(new long[] {0, 5},
+                DaemonTest.stats(DaemonTest.run(work, "log")));
+            assertArrayEquals(new long[] {0, 5},
+                DaemonTest.stats(DaemonTest.run(work, "log")));
+        } finally {
+            ChunkerTest.delete(work);
+        }
+    }
+
+    /** A daemon answers every commit read after the first command from
+     *  its cache, across commands, and misses only on commits made
+     *  since. */
+    @Test
+    public void daemonHitsAcrossCommands() throws Exception {
+        File work = ChunkerTest.tempDir();
+        File dir = new File(work, ".gitlet");
+        Process daemon = null;
+        try {
+            commits(work, 4);
+            daemon = DaemonTest.gitlet(work, "daemon").start();
+            DaemonTest.await(dir);
+            assertArrayEquals(new long[] {0, 5},
+                DaemonTest.stats(DaemonTest.send(dir, "log")));
+            assertArrayEquals(new long[] {5, 5},
+                DaemonTest.stats(DaemonTest.send(dir, "log")));
+            Utils.writeContents(new File(work, "f5.txt"), "5\n");
+            DaemonTest.send(dir, "add", "f5.txt");
+            DaemonTest.send(dir, "commit", "c5");
+            long[] stats = DaemonTest.stats(DaemonTest.send(dir, "log"));
+            long[] again = DaemonTest.stats(DaemonTest.send(dir, "log"));
+            assertEquals(stats[1], again[1]);
+            assertEquals(stats[0] + 6, again[0]);
+        } finally {
+            if (daemon != null) {
+                daemon.destroy();
+                daemon.waitFor();
+            }
+            ChunkerTest.delete(work);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks with a FastCDC-style gear
+ *  rolling hash.  Cut points depend only on nearby bytes, so an edit
+ *  early in a file leaves the chunks after it unchanged and they can be
+ *  shared between versions.  Chunking is normalized: below the average
+ *  size a stricter mask is used, above it a looser one, which keeps most
+ *  chunks near the average.
+ *  @author Janani Sriram
+ */
+class Chunker {
+
+    /** Smallest chunk, except possibly the last. */
+    static final int MIN_SIZE = 16 * 1024;
+
+    /** Target average chunk size. */
+    static final int AVG_SIZE = 64 * 1024;
+
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Mask tested before the average size is reached (18 bits). */
+    private static final long MASK_SMALL = 0x3ffffL << 46;
+
+    /** Mask tested after the average size is reached (14 bits). */
+    private static final long MASK_LARGE = 0x3fffL << 50;
+
+    /** Gear table: one pseudo-random 64-bit value per byte value, fixed
+     *  so that cut points are the same on every run. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** Source of the bytes to chunk. */
+    private final InputStream _in;
+
+    /** Bytes read but not yet returned. */
+    private final byte[] _buf = new byte[MAX_SIZE];
+
+    /** Number of valid bytes in _buf. */
+    private int _len;
+
+    /** True once _in is exhausted. */
+    private boolean _eof;
+
+    /** A chunker over IN. */
+    Chunker(InputStream in) {
+        _in = in;
+    }
+
+    /** Returns the next chunk, or null at the end of the stream. */
+    byte[] next() throws IOException {
+        while (!_eof && _len < _buf.length) {
+            int n = _in.read(_buf, _len, _buf.length - _len);
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _len += n;
+            }
+        }
+        if (_len == 0) {
+            return null;
+        }
+        int cut = cutPoint(_buf, _len);
+        byte[] chunk = Arrays.copyOf(_buf, cut);
+        System.arraycopy(_buf, cut, _buf, 0, _len - cut);
+        _len -= cut;
+        return chunk;
+    }
+
+    /** Returns the length of the first chunk of the LEN bytes in BUF. */
+    static int cutPoint(byte[] buf, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int limit = Math.min(len, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
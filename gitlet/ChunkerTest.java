@@ -0,0 +1,137 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of content-defined chunking and of chunked blobs in the object
+ *  store.
+ *  @author Janani Sriram
+ */
+public class ChunkerTest {
+
+    /** Returns N pseudo-random bytes drawn with SEED. */
+    static byte[] randomBytes(int n, long seed) {
+        byte[] data = new byte[n];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** Returns the chunks DATA is split into. */
+    static List<byte[]> chunks(byte[] data) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    /** Returns a new empty directory for a test. */
+    static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-test").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Deletes FILE and everything under it. */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Chunks put back together are the input, and every chunk but the
+     *  last is within the size bounds. */
+    @Test
+    public void chunksRoundTrip() throws IOException {
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17, 1);
+        List<byte[]> chunks = chunks(data);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i += 1) {
+            byte[] chunk = chunks.get(i);
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.length >= Chunker.MIN_SIZE);
+            }
+            joined.writeBytes(chunk);
+        }
+        assertArrayEquals(data, joined.toByteArray());
+    }
+
+    /** Short and empty inputs come back as at most one chunk. */
+    @Test
+    public void smallInputs() throws IOException {
+        assertEquals(0, chunks(new byte[0]).size());
+        byte[] data = randomBytes(100, 2);
+        List<byte[]> chunks = chunks(data);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(data, chunks.get(0));
+    }
+
+    /** Inserting bytes near the start leaves most later chunks as they
+     *  were. */
+    @Test
+    public void insertionKeepsLaterChunks() throws IOException {
+        byte[] data = randomBytes(2 * 1024 * 1024, 3);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(data, 0, 1000);
+        edited.writeBytes("inserted text".getBytes());
+        edited.write(data, 1000, data.length - 1000);
+
+        HashSet<ObjectId> before = new HashSet<>();
+        for (byte[] chunk : chunks(data)) {
+            before.add(ObjectId.hash(chunk));
+        }
+        List<byte[]> after = chunks(edited.toByteArray());
+        int shared = 0;
+        for (byte[] chunk : after) {
+            if (before.contains(ObjectId.hash(chunk))) {
+                shared += 1;
+            }
+        }
+        assertTrue(shared >= after.size() - 2);
+    }
+
+    /** A large file is stored chunked, reads back whole under its plain
+     *  SHA-1, and a second version shares its unchanged chunks. */
+    @Test
+    public void chunkedBlobsShareChunks() throws IOException {
+        File dir = tempDir();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            byte[] v1 = randomBytes(
+                (int) ObjectStore.CHUNK_THRESHOLD * 2, 4);
+            byte[] v2 = v1.clone();
+            v2[v2.length / 2] ^= 1;
+            File file = new File(dir, "big");
+
+            Files.write(file.toPath(), v1);
+            ObjectId id1 = store.insertFile(file);
+            assertEquals(ObjectId.hash(v1), id1);
+            int blobs = store.ids(ObjectStore.BLOB).size();
+
+            Files.write(file.toPath(), v2);
+            ObjectId id2 = store.insertFile(file);
+            assertArrayEquals(v1, store.read(id1));
+            assertArrayEquals(v2, store.read(id2));
+            assertTrue(store.ids(ObjectStore.BLOB).size() - blobs <= 3);
+        } finally {
+            delete(dir);
+        }
+    }
+}
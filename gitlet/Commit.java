@@ -1,32 +1,53 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 
 /** Commit class.
+ *
+ * Commits are stored in a compact binary form (see encode): a format
+ * version byte, the message, the commit time in milliseconds since the
+ * epoch, the parents as raw 20-byte UIDs, and the raw UID of the root
+ * Tree of the tracked files.  A commit's UID is the SHA-1 of that
+ * encoding.  Version 1 commits held the tracked files as a flat table
+ * sorted by file name instead of a tree; they can still be read.
  * @author Janani Sriram
  * */
 
-public class Commit implements Serializable {
+public class Commit {
+
+    /** Current version of the commit encoding. */
+    static final int FORMAT_VERSION = 2;
+
+    /** Version of the encoding with a flat table of tracked files. */
+    static final int FLAT_FORMAT_VERSION = 1;
 
     /** Commit message. */
     private String thismessage;
 
-    /** Commit timestamp. */
-    private String thistimestamp;
+    /** Commit time in milliseconds since the epoch. */
+    private long thistime;
 
     /** Commit parentUID. */
-    private ArrayList<String> thisparentUID = new ArrayList<>();
+    private ArrayList<ObjectId> thisparentUID = new ArrayList<>();
 
     /** Commit UID. */
-    private String thisUID;
+    private ObjectId thisUID;
 
-    /** Commit blobs. */
-    private HashMap<String, String> thisblobs;
+    /** Commit's root tree UID. */
+    private ObjectId thistree;
+
+    /** Commit blobs; read from the tree when first needed. */
+    private HashMap<String, ObjectId> thisblobs;
 
     /** Commit constructor.
      *
@@ -35,23 +56,74 @@ public class Commit implements Serializable {
      * @param parentUID commit parent's UID
      * */
     public Commit(String message, HashMap<String,
-            String> blobs, String parentUID) {
-        LocalDateTime currentTime = LocalDateTime.now();
-        SimpleDateFormat dateTimeFormatter =
-                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        this.thistimestamp = dateTimeFormatter.format(new Date(0));
+            ObjectId> blobs, ObjectId parentUID) {
+        this(message, blobs, parentUID, null);
+    }
+
+    /** Commit constructor for commits that may have a second parent.
+     *
+     * @param message commit message
+     * @param blobs commit blobs
+     * @param parentUID commit parent's UID
+     * @param secondParentUID merged-in parent's UID, or null
+     * */
+    public Commit(String message, HashMap<String, ObjectId> blobs,
+                  ObjectId parentUID, ObjectId secondParentUID) {
+        this(message, Tree.write(Repository.getStore(), blobs), parentUID,
+                secondParentUID);
+        this.thisblobs = blobs;
+    }
 
+    /** Commit constructor for a snapshot that is already stored as a
+     * tree.
+     *
+     * @param message commit message
+     * @param treeUID UID of the root tree of the commit's files
+     * @param parentUID commit parent's UID
+     * @param secondParentUID merged-in parent's UID, or null
+     * */
+    public Commit(String message, ObjectId treeUID,
+                  ObjectId parentUID, ObjectId secondParentUID) {
         this.thismessage = message;
         this.thisparentUID.add(parentUID);
+        if (secondParentUID != null) {
+            this.thisparentUID.add(secondParentUID);
+        }
         if (this.thisparentUID.get(0) == null) {
-            this.thistimestamp = "Thu Jan 1 00:00:00 1970 -0800";
+            this.thistime = 0;
         } else {
             setTimestamp();
         }
-        this.thisUID = Utils.sha1(Utils.serialize(this));
-        Utils.writeObject(Utils.join(
-                Repository.getCommitDir(), this.thisUID + ".txt"), this);
-        this.thisblobs = blobs;
+        this.thistree = treeUID;
+        byte[] data = encode();
+        this.thisUID = ObjectId.hash(data);
+        Repository.getStore().write(this.thisUID, ObjectStore.COMMIT, data);
+    }
+
+    /** Commit constructor for a commit converted from the format of an
+     * older version of gitlet, which keeps its original time.
+     *
+     * @param message commit message
+     * @param time commit time in milliseconds since the epoch
+     * @param treeUID UID of the root tree of the commit's files
+     * @param parentUIDs UIDs of the parents, first parent first
+     * */
+    Commit(String message, long time, ObjectId treeUID,
+           List<ObjectId> parentUIDs) {
+        this.thismessage = message;
+        this.thistime = time;
+        this.thisparentUID.addAll(parentUIDs);
+        if (parentUIDs.isEmpty()) {
+            this.thisparentUID.add(null);
+        }
+        this.thistree = treeUID;
+        byte[] data = encode();
+        this.thisUID = ObjectId.hash(data);
+        Repository.getStore().write(this.thisUID, ObjectStore.COMMIT, data);
+    }
+
+    /** Constructor used when decoding a stored commit. */
+    private Commit() {
     }
 
     /** Get commit message.
@@ -67,14 +139,24 @@ public class Commit implements Serializable {
      * @return commit timestamp
      * */
     public String getTimestamp() {
-        return this.thistimestamp;
+        SimpleDateFormat dateTimeFormatter =
+                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+        return dateTimeFormatter.format(new Date(this.thistime));
+    }
+
+    /** Get commit time.
+     *
+     * @return commit time in milliseconds since the epoch
+     * */
+    public long getTime() {
+        return this.thistime;
     }
 
     /** Get commit parent's UID.
      *
      * @return commit parent's UID
      * */
-    public ArrayList<String> getParentUID() {
+    public ArrayList<ObjectId> getParentUID() {
         return this.thisparentUID;
     }
 
@@ -82,7 +164,7 @@ public class Commit implements Serializable {
      *
      * @return commit UID
      * */
-    public String getUID() {
+    public ObjectId getUID() {
         return this.thisUID;
     }
 
@@ -90,15 +172,127 @@ public class Commit implements Serializable {
      *
      * @return commit blobs
      * */
-    public HashMap<String, String> getBlobs() {
+    public HashMap<String, ObjectId> getBlobs() {
+        if (thisblobs == null) {
+            thisblobs = Tree.flatten(Repository.getStore(), thistree);
+        }
         return thisblobs;
     }
 
+    /** Get commit's root tree UID.
+     *
+     * @return UID of the root tree of the commit's files
+     * */
+    public ObjectId getTree() {
+        if (thistree == null) {
+            thistree = Tree.write(Repository.getStore(), thisblobs);
+        }
+        return thistree;
+    }
+
     /** Set commit timestamp. */
     public void setTimestamp() {
-        LocalDateTime currentTime = LocalDateTime.now();
-        SimpleDateFormat dateTimeFormatter =
-                new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        this.thistimestamp = dateTimeFormatter.format(new Date(0));
+        this.thistime = System.currentTimeMillis();
+    }
+
+    /** Encodes this commit.
+     *
+     * @return binary encoding of this commit
+     * */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            writeString(out, thismessage);
+            out.writeLong(thistime);
+            int parents = 0;
+            for (ObjectId parent : thisparentUID) {
+                if (parent != null) {
+                    parents += 1;
+                }
+            }
+            out.writeByte(parents);
+            for (ObjectId parent : thisparentUID) {
+                if (parent != null) {
+                    parent.write(out);
+                }
+            }
+            getTree().write(out);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+    }
+
+    /** Decodes a commit.
+     *
+     * @param uid the commit's UID
+     * @param data binary encoding produced by encode
+     * @return decoded commit
+     * */
+    public static Commit decode(ObjectId uid, byte[] data) {
+        if (LegacyFormat.isSerialized(data)) {
+            throw new IllegalArgumentException("commit " + uid
+                    + " was saved by an older version of gitlet;"
+                    + " run 'java gitlet.Main migrate' to convert it");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            int version = in.get();
+            if (version != FORMAT_VERSION
+                    && version != FLAT_FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                        "unknown commit format in " + uid);
+            }
+            Commit result = new Commit();
+            result.thisUID = uid;
+            result.thismessage = readString(in);
+            result.thistime = in.getLong();
+            int parents = in.get();
+            for (int i = 0; i < parents; i += 1) {
+                result.thisparentUID.add(ObjectId.read(in));
+            }
+            if (parents == 0) {
+                result.thisparentUID.add(null);
+            }
+            if (version == FORMAT_VERSION) {
+                result.thistree = ObjectId.read(in);
+                return result;
+            }
+            int blobs = in.getInt();
+            result.thisblobs = new HashMap<>(blobs * 2);
+            for (int i = 0; i < blobs; i += 1) {
+                String fileName = readString(in);
+                result.thisblobs.put(fileName, ObjectId.read(in));
+            }
+            return result;
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated commit " + uid);
+        }
+    }
+
+    /** Writes a length-prefixed UTF-8 string.
+     *
+     * @param out stream to write to
+     * @param str string to write
+     * */
+    static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a length-prefixed UTF-8 string.
+     *
+     * @param in buffer to read from
+     * @return string read
+     * */
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,495 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit graph: every commit's id, parents, generation number and
+ *  time, kept in memory-mapped files so that history can be walked
+ *  without reading commit objects.
+ *
+ *  The graph is a chain of layers, listed oldest first in the file
+ *  commit-graph/chain.  Each layer holds a header (magic, version, number
+ *  of records, number of records in the layers below it), a 256-entry
+ *  fan-out table, and fixed-size records sorted by id.  A commit's
+ *  position is its index in its layer plus the number of records below
+ *  that layer; parents are recorded by position, and a layer only refers
+ *  to itself and the layers below it.  New commits go into a new top
+ *  layer, and the top layers are merged whenever a layer holds at least
+ *  half as many records as the one below it, so each update rewrites an
+ *  amount of data proportional to what it adds, amortized.
+ *
+ *  The generation number of a root commit is 1; any other commit's is one
+ *  more than the largest generation of its parents.
+ *  @author Janani Sriram
+ */
+class CommitGraph {
+
+    /** Magic number opening every layer ("GCGR"). */
+    static final int MAGIC = 0x47434752;
+
+    /** Current layer format version. */
+    static final int VERSION = 1;
+
+    /** Size of a layer's header, fan-out table included. */
+    static final int HEADER = 16 + 256 * 4;
+
+    /** Size of a record: id, two parent positions, generation, time. */
+    static final int RECORD = 20 + 4 + 4 + 4 + 8;
+
+    /** Position recorded for a missing parent. */
+    static final int NONE = -1;
+
+    /** Directory holding the layers. */
+    private final File _dir;
+
+    /** File listing the layers, oldest first. */
+    private final File _chain;
+
+    /** Mapped layers, oldest first; loaded on first use. */
+    private List<MappedByteBuffer> _layers;
+
+    /** Names of the layers in _layers. */
+    private List<String> _names;
+
+    /** A commit graph for the repository whose metadata folder is
+     *  GITLETFOLDER. */
+    CommitGraph(File gitletFolder) {
+        _dir = Utils.join(gitletFolder, "commit-graph");
+        _chain = Utils.join(_dir, "chain");
+    }
+
+    /** Returns true iff the graph has been written. */
+    boolean exists() {
+        return _chain.isFile();
+    }
+
+    /** Forgets the mapped layers if another process has rewritten the
+     *  chain since they were mapped. */
+    void refresh() {
+        if (_layers == null) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        if (_chain.isFile()) {
+            for (String name
+                    : Utils.readContentsAsString(_chain).split("\n")) {
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        if (!names.equals(_names)) {
+            _layers = null;
+        }
+    }
+
+    /** Maps the layers, if that has not been done yet. */
+    private void load() {
+        if (_layers != null) {
+            return;
+        }
+        _layers = new ArrayList<>();
+        _names = new ArrayList<>();
+        if (!_chain.isFile()) {
+            return;
+        }
+        for (String name : Utils.readContentsAsString(_chain).split("\n")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            File layer = Utils.join(_dir, name);
+            try (FileChannel channel = FileChannel.open(layer.toPath(),
+                    StandardOpenOption.READ)) {
+                MappedByteBuffer map = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                    throw new IllegalArgumentException("corrupt " + layer);
+                }
+                _layers.add(map);
+                _names.add(name);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        load();
+        if (_layers.isEmpty()) {
+            return 0;
+        }
+        MappedByteBuffer top = _layers.get(_layers.size() - 1);
+        return top.getInt(12) + top.getInt(8);
+    }
+
+    /** Returns the position of commit ID, or -1 if the graph does not
+     *  contain it. */
+    int find(ObjectId id) {
+        load();
+        if (id == null) {
+            return -1;
+        }
+        byte[] raw = id.toBytes();
+        int first = raw[0] & 0xff;
+        for (MappedByteBuffer layer : _layers) {
+            int lo = first == 0 ? 0 : layer.getInt(16 + 4 * (first - 1));
+            int hi = layer.getInt(16 + 4 * first) - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compare(layer, mid, raw);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return layer.getInt(12) + mid;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the ids of the commits whose names start with the
+     *  hexadecimal PREFIX, in order.  In each layer, the fan-out table
+     *  narrows the search to the records whose first byte the prefix
+     *  allows, and a binary search finds the first that can match. */
+    List<ObjectId> withPrefix(String prefix) {
+        load();
+        List<ObjectId> result = new ArrayList<>();
+        ObjectId low = prefix.length() > ObjectId.HEX_LENGTH ? null
+            : ObjectId.parse(prefix + "0".repeat(
+                ObjectId.HEX_LENGTH - prefix.length()));
+        if (low == null) {
+            return result;
+        }
+        byte[] raw = low.toBytes();
+        int first = low.firstByte();
+        int last = prefix.length() >= 2 ? first
+            : prefix.length() == 1 ? first + 15 : 255;
+        for (MappedByteBuffer layer : _layers) {
+            int lo = first == 0 ? 0 : layer.getInt(16 + 4 * (first - 1));
+            int hi = layer.getInt(16 + 4 * last);
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(layer, mid, raw) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int end = layer.getInt(16 + 4 * last);
+            for (int pos = lo; pos < end; pos += 1) {
+                ObjectId id = ObjectId.read(
+                    layer.duplicate().position(HEADER + pos * RECORD));
+                if (!id.startsWith(prefix)) {
+                    break;
+                }
+                result.add(id);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Compares the id of record POS of LAYER with RAW. */
+    private static int compare(MappedByteBuffer layer, int pos, byte[] raw) {
+        int base = HEADER + pos * RECORD;
+        for (int i = 0; i < raw.length; i += 1) {
+            int cmp = Integer.compare(layer.get(base + i) & 0xff,
+                    raw[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the layer holding position POS. */
+    private MappedByteBuffer layerOf(int pos) {
+        for (int i = _layers.size() - 1; i >= 0; i -= 1) {
+            if (pos >= _layers.get(i).getInt(12)) {
+                return _layers.get(i);
+            }
+        }
+        throw new IndexOutOfBoundsException("no commit at " + pos);
+    }
+
+    /** Returns the offset in its layer of the record at position POS. */
+    private int offsetOf(MappedByteBuffer layer, int pos) {
+        return HEADER + (pos - layer.getInt(12)) * RECORD;
+    }
+
+    /** Returns the id of the commit at position POS. */
+    ObjectId id(int pos) {
+        load();
+        MappedByteBuffer layer = layerOf(pos);
+        return ObjectId.read(layer.duplicate().position(offsetOf(layer, pos)));
+    }
+
+    /** Returns the positions of the parents of the commit at position POS,
+     *  first parent first. */
+    int[] parents(int pos) {
+        load();
+        MappedByteBuffer layer = layerOf(pos);
+        int offset = offsetOf(layer, pos);
+        int first = layer.getInt(offset + 20);
+        int second = layer.getInt(offset + 24);
+        if (first == NONE) {
+            return new int[0];
+        } else if (second == NONE) {
+            return new int[] {first};
+        }
+        return new int[] {first, second};
+    }
+
+    /** Returns the generation number of the commit at position POS. */
+    int generation(int pos) {
+        load();
+        MappedByteBuffer layer = layerOf(pos);
+        return layer.getInt(offsetOf(layer, pos) + 28);
+    }
+
+    /** Returns the time of the commit at position POS. */
+    long time(int pos) {
+        load();
+        MappedByteBuffer layer = layerOf(pos);
+        return layer.getLong(offsetOf(layer, pos) + 32);
+    }
+
+    /** Returns the id of the first parent of commit ID, or null if it has
+     *  none.  ID must be in the graph. */
+    ObjectId firstParent(ObjectId id) {
+        int[] parents = parents(find(id));
+        return parents.length == 0 ? null : id(parents[0]);
+    }
+
+    /** Adds COMMITS, whose parents must already be in the graph or among
+     *  COMMITS, as a new top layer, then merges layers as needed. */
+    void add(Collection<Commit> commits) {
+        load();
+        HashMap<ObjectId, Commit> fresh = new HashMap<>();
+        for (Commit commit : commits) {
+            if (find(commit.getUID()) < 0) {
+                fresh.put(commit.getUID(), commit);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        List<Record> records = new ArrayList<>();
+        HashMap<ObjectId, Integer> generations = new HashMap<>();
+        for (Commit commit : fresh.values()) {
+            records.add(new Record(commit.getUID(),
+                    commit.getParentUID(), commit.getTime(),
+                    generation(commit.getUID(), fresh, generations)));
+        }
+
+        int keep = _layers.size();
+        int count = records.size();
+        while (keep > 0 && 2 * count >= _layers.get(keep - 1).getInt(8)) {
+            keep -= 1;
+            count += _layers.get(keep).getInt(8);
+            records.addAll(readLayer(_layers.get(keep)));
+        }
+        int base = keep == 0 ? 0 : _layers.get(keep - 1).getInt(12)
+                + _layers.get(keep - 1).getInt(8);
+        List<String> names = new ArrayList<>(_names.subList(0, keep));
+        names.add(writeLayer(records, base, keep));
+        writeChain(names);
+        _layers = null;
+    }
+
+    /** Returns the generation of commit ID, computing it for commits in
+     *  FRESH and remembering the results in GENERATIONS. */
+    private int generation(ObjectId id, HashMap<ObjectId, Commit> fresh,
+                           HashMap<ObjectId, Integer> generations) {
+        if (id == null) {
+            return 0;
+        }
+        Integer known = generations.get(id);
+        if (known != null) {
+            return known;
+        }
+        Commit commit = fresh.get(id);
+        if (commit == null) {
+            int pos = find(id);
+            if (pos < 0) {
+                throw new IllegalArgumentException("parent " + id
+                        + " is missing from the commit graph");
+            }
+            return generation(pos);
+        }
+        List<ObjectId> pending = new ArrayList<>();
+        pending.add(id);
+        while (!pending.isEmpty()) {
+            ObjectId next = pending.get(pending.size() - 1);
+            int result = 1;
+            boolean ready = true;
+            for (ObjectId parent : fresh.get(next).getParentUID()) {
+                if (parent == null) {
+                    continue;
+                }
+                if (fresh.containsKey(parent)
+                        && !generations.containsKey(parent)) {
+                    pending.add(parent);
+                    ready = false;
+                } else {
+                    result = Math.max(result, 1 + generation(parent, fresh,
+                            generations));
+                }
+            }
+            if (ready) {
+                generations.put(next, result);
+                pending.remove(pending.size() - 1);
+            }
+        }
+        return generations.get(id);
+    }
+
+    /** Returns the records of LAYER with parents as ids. */
+    private List<Record> readLayer(MappedByteBuffer layer) {
+        List<Record> result = new ArrayList<>();
+        int base = layer.getInt(12);
+        for (int i = 0; i < layer.getInt(8); i += 1) {
+            int pos = base + i;
+            List<ObjectId> parentIds = new ArrayList<>();
+            for (int parent : parents(pos)) {
+                parentIds.add(id(parent));
+            }
+            result.add(new Record(id(pos), parentIds, time(pos),
+                    generation(pos)));
+        }
+        return result;
+    }
+
+    /** Writes RECORDS as a layer whose first position is BASE, sitting on
+     *  the lowest KEEP layers.  Returns the layer's file name. */
+    private String writeLayer(List<Record> records, int base, int keep) {
+        records.sort((a, b) -> a.id.compareTo(b.id));
+        HashMap<ObjectId, Integer> positions = new HashMap<>();
+        for (int i = 0; i < records.size(); i += 1) {
+            positions.put(records.get(i).id, base + i);
+        }
+        List<MappedByteBuffer> below = _layers.subList(0, keep);
+        List<MappedByteBuffer> all = _layers;
+        _layers = below;
+
+        _dir.mkdirs();
+        String name = "graph-" + Utils.sha1(records.get(0).id.name(),
+                records.get(records.size() - 1).id.name(),
+                Integer.toString(base), Integer.toString(records.size()));
+        File tmp = Utils.join(_dir, name + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            out.writeInt(base);
+            int[] fanout = new int[256];
+            for (Record record : records) {
+                fanout[record.id.firstByte()] += 1;
+            }
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (Record record : records) {
+                record.id.write(out);
+                int[] parents = {NONE, NONE};
+                for (int i = 0; i < record.parents.size() && i < 2; i += 1) {
+                    Integer pos = positions.get(record.parents.get(i));
+                    parents[i] = pos != null ? pos
+                            : find(record.parents.get(i));
+                }
+                out.writeInt(parents[0]);
+                out.writeInt(parents[1]);
+                out.writeInt(record.generation);
+                out.writeLong(record.time);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            _layers = all;
+        }
+        try {
+            Files.move(tmp.toPath(), Utils.join(_dir, name).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return name;
+    }
+
+    /** Replaces the chain file with NAMES and deletes unused layers. */
+    private void writeChain(List<String> names) {
+        File tmp = Utils.join(_dir, "chain.tmp");
+        Utils.writeContents(tmp, String.join("\n", names) + "\n");
+        try {
+            Files.move(tmp.toPath(), _chain.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String file : Utils.plainFilenamesIn(_dir)) {
+            if (file.startsWith("graph-") && !names.contains(file)) {
+                Utils.join(_dir, file).delete();
+            }
+        }
+    }
+
+    /** Rebuilds the graph from scratch out of every commit in STORE. */
+    void rebuild(ObjectStore store) {
+        List<Commit> commits = new ArrayList<>();
+        for (ObjectId id : store.ids(ObjectStore.COMMIT)) {
+            commits.add(store.readCommit(id));
+        }
+        if (_chain.isFile()) {
+            _chain.delete();
+        }
+        _layers = null;
+        add(commits);
+    }
+
+    /** One commit's entry, with parents named by id. */
+    private static class Record {
+        /** Commit id. */
+        private final ObjectId id;
+        /** Parent ids, first parent first; nulls are ignored. */
+        private final List<ObjectId> parents;
+        /** Commit time. */
+        private final long time;
+        /** Generation number. */
+        private final int generation;
+
+        /** A record for commit ID with parents PARENTS, time TIME and
+         *  generation GENERATION. */
+        Record(ObjectId id, List<ObjectId> parents, long time,
+               int generation) {
+            this.id = id;
+            this.parents = new ArrayList<>();
+            for (ObjectId parent : parents) {
+                if (parent != null) {
+                    this.parents.add(parent);
+                }
+            }
+            this.time = time;
+            this.generation = generation;
+        }
+    }
+}
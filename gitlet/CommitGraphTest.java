@@ -0,0 +1,200 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Tests of the layered commit-graph file.
+ *  @author Janani Sriram
+ */
+public class CommitGraphTest {
+
+    /** Returns the encoding of a commit with message MESSAGE, time TIME
+     *  and parents PARENTS.  Its root tree is never read, so it is
+     *  made up. */
+    static byte[] encode(String message, long time, ObjectId... parents)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(Commit.FORMAT_VERSION);
+        Commit.writeString(out, message);
+        out.writeLong(time);
+        out.writeByte(parents.length);
+        for (ObjectId parent : parents) {
+            out.write(parent.toBytes());
+        }
+        out.write(ObjectId.hash(new byte[0]).toBytes());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Returns a commit with message MESSAGE, time TIME and parents
+     *  PARENTS, also storing it in STORE unless that is null. */
+    static Commit commit(ObjectStore store, String message, long time,
+                         ObjectId... parents) throws IOException {
+        byte[] data = encode(message, time, parents);
+        ObjectId id = ObjectId.hash(data);
+        if (store != null) {
+            store.write(id, ObjectStore.COMMIT, data);
+        }
+        return Commit.decode(id, data);
+    }
+
+    /** Returns the number of layers in the chain of the graph kept in
+     *  metadata folder DIR. */
+    static int layers(File dir) {
+        return Utils.readContentsAsString(
+            Utils.join(dir, "commit-graph", "chain")).split("\n").length;
+    }
+
+    /** Roots have generation 1, other commits one more than their
+     *  highest parent, and parents and times read back as written. */
+    @Test
+    public void generationsAndParents() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            Commit root = commit(null, "root", 0);
+            Commit a = commit(null, "a", 10, root.getUID());
+            Commit b = commit(null, "b", 20, a.getUID());
+            Commit side = commit(null, "side", 15, root.getUID());
+            Commit merge = commit(null, "merge", 30, b.getUID(),
+                side.getUID());
+            CommitGraph graph = new CommitGraph(dir);
+            assertFalse(graph.exists());
+            graph.add(List.of(merge, side, b, a, root));
+            assertTrue(graph.exists());
+            assertEquals(5, graph.size());
+
+            graph = new CommitGraph(dir);
+            assertEquals(1, graph.generation(graph.find(root.getUID())));
+            assertEquals(3, graph.generation(graph.find(b.getUID())));
+            assertEquals(2, graph.generation(graph.find(side.getUID())));
+            int pos = graph.find(merge.getUID());
+            assertEquals(4, graph.generation(pos));
+            assertEquals(30, graph.time(pos));
+            int[] parents = graph.parents(pos);
+            assertEquals(2, parents.length);
+            assertEquals(b.getUID(), graph.id(parents[0]));
+            assertEquals(side.getUID(), graph.id(parents[1]));
+            assertEquals(0, graph.parents(graph.find(root.getUID())).length);
+            assertEquals(a.getUID(), graph.firstParent(b.getUID()));
+            assertEquals(-1, graph.find(ObjectId.hash(new byte[1])));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** Adding commits one at a time keeps the number of layers
+     *  logarithmic in the number of commits, and every commit stays
+     *  findable with its generation. */
+    @Test
+    public void layersMerge() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            CommitGraph graph = new CommitGraph(dir);
+            List<ObjectId> ids = new ArrayList<>();
+            Commit parent = commit(null, "root", 0);
+            graph.add(List.of(parent));
+            ids.add(parent.getUID());
+            for (int i = 1; i < 200; i += 1) {
+                parent = commit(null, "c" + i, i, parent.getUID());
+                graph.add(List.of(parent));
+                ids.add(parent.getUID());
+                assertTrue(layers(dir) <= 9);
+            }
+            graph = new CommitGraph(dir);
+            assertEquals(200, graph.size());
+            for (int i = 0; i < ids.size(); i += 1) {
+                assertEquals(i + 1, graph.generation(graph.find(ids.get(i))));
+            }
+            graph.add(List.of(parent));
+            assertEquals(200, graph.size());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+
+    /** Prefix lookups find exactly the commits whose ids start with the
+     *  prefix, in order, across several layers. */
+    @Test
+    public void withPrefix() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            CommitGraph graph = new CommitGraph(dir);
+            TreeSet<ObjectId> ids = new TreeSet<>();
+            Commit parent = commit(null, "root", 0);
+            graph.add(List.of(parent));
+            ids.add(parent.getUID());
+            for (int i = 1; i < 300; i += 1) {
+                parent = commit(null, "c" + i, i, parent.getUID());
+                graph.add(List.of(parent));
+                ids.add(parent.getUID());
+            }
+            assertTrue(layers(dir) > 1);
+            graph = new CommitGraph(dir);
+            assertEquals(List.copyOf(ids), graph.withPrefix(""));
+            Random random = new Random(17);
+            for (int trial = 0; trial < 200; trial += 1) {
+                String prefix = String.format("%03x",
+                    random.nextInt(4096)).substring(0, 1 + random.nextInt(3));
+                List<ObjectId> expected = new ArrayList<>();
+                for (ObjectId id : ids) {
+                    if (id.name().startsWith(prefix)) {
+                        expected.add(id);
+                    }
+                }
+                assertEquals(expected, graph.withPrefix(prefix));
+            }
+            for (ObjectId id : ids) {
+                assertEquals(List.of(id), graph.withPrefix(id.name()));
+                assertTrue(graph.withPrefix(id.abbreviate(6)).contains(id));
+            }
+            assertTrue(graph.withPrefix(parent.getUID().name() + "0")
+                .isEmpty());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+    /** A commit whose parent is in neither the graph nor the commits
+     *  added with it is rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void missingParent() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            new CommitGraph(dir).add(List.of(
+                commit(null, "orphan", 0, ObjectId.hash(new byte[1]))));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** Rebuilding reads every commit in the store into a single
+     *  layer. */
+    @Test
+    public void rebuild() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            Commit root = commit(store, "root", 0);
+            Commit child = commit(store, "child", 1, root.getUID());
+            CommitGraph graph = new CommitGraph(dir);
+            graph.add(List.of(root));
+            graph.rebuild(store);
+            assertEquals(1, layers(dir));
+            graph = new CommitGraph(dir);
+            assertEquals(2, graph.size());
+            assertEquals(2, graph.generation(graph.find(child.getUID())));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/** An append-only journal of every commit, kept in global-log/journal.
+ *  Each commit's entry is appended, already in the form global-log
+ *  prints it, when the commit is made, so global-log is a straight copy
+ *  of the file to the output and never reads a commit.  As in Git, a
+ *  commit's date is shown in the time zone it was made in.
+ *
+ *  A repository without a journal gets one rebuilt from every commit in
+ *  the store the first time it is needed.
+ *  @author Janani Sriram
+ */
+class CommitJournal {
+
+    /** Size of the blocks the journal is copied in. */
+    static final int BUFFER = 1 << 16;
+
+    /** The journal file. */
+    private final File _file;
+
+    /** The journal of the repository whose metadata folder is
+     *  GITLETFOLDER. */
+    CommitJournal(File gitletFolder) {
+        _file = Utils.join(gitletFolder, "global-log", "journal");
+    }
+
+    /** Appends the entry of COMMIT, which must already be in STORE.  If
+     *  there is no journal yet, it is rebuilt from STORE instead, which
+     *  covers COMMIT. */
+    void add(Commit commit, ObjectStore store) {
+        if (!_file.isFile()) {
+            rebuild(store);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(_file, true)) {
+            out.write(entry(commit));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff the last entry of the journal is that of
+     *  COMMIT. */
+    boolean endsWith(Commit commit) {
+        byte[] entry = entry(commit);
+        if (!_file.isFile() || _file.length() < entry.length) {
+            return false;
+        }
+        byte[] tail = new byte[entry.length];
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            in.seek(_file.length() - entry.length);
+            in.readFully(tail);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Arrays.equals(tail, entry);
+    }
+
+    /** Replaces the journal with the entries of every commit in STORE. */
+    void rebuild(ObjectStore store) {
+        File tmp = new File(_file.getPath() + ".tmp");
+        tmp.getParentFile().mkdirs();
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                for (ObjectId id : store.ids(ObjectStore.COMMIT)) {
+                    out.write(entry(store.readCommit(id)));
+                }
+            }
+            Files.move(tmp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the journal to OUT, rebuilding it from STORE first if
+     *  there is none. */
+    void copyTo(OutputStream out, ObjectStore store) {
+        if (!_file.isFile()) {
+            rebuild(store);
+        }
+        byte[] buf = new byte[BUFFER];
+        try (InputStream in = Files.newInputStream(_file.toPath())) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the entry of COMMIT as global-log prints it. */
+    private static byte[] entry(Commit commit) {
+        return ("===\ncommit " + commit.getUID() + "\nDate: "
+            + commit.getTimestamp() + "\n" + commit.getMessage() + "\n\n")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+}
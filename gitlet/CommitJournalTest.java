@@ -0,0 +1,72 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Tests of the commit journal behind global-log.
+ *  @author Janani Sriram
+ */
+public class CommitJournalTest {
+
+    /** Returns the entry global-log prints for COMMIT. */
+    static String entry(Commit commit) {
+        return "===\ncommit " + commit.getUID() + "\nDate: "
+            + commit.getTimestamp() + "\n" + commit.getMessage() + "\n\n";
+    }
+
+    /** Returns what JOURNAL copies out, rebuilding from STORE if
+     *  needed. */
+    static String contents(CommitJournal journal, ObjectStore store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        journal.copyTo(out, store);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** A missing journal is rebuilt from the store, and commits added
+     *  later are appended after the entries already there. */
+    @Test
+    public void rebuildsThenAppends() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            Commit root = CommitGraphTest.commit(store, "initial commit", 0);
+            Commit a = CommitGraphTest.commit(store, "a", 1000,
+                root.getUID());
+            CommitJournal journal = new CommitJournal(dir);
+            String rebuilt = contents(journal, store);
+            assertEquals(entry(root).length() + entry(a).length(),
+                rebuilt.length());
+            assertTrue(rebuilt.contains(entry(root)));
+            assertTrue(rebuilt.contains(entry(a)));
+
+            Commit b = CommitGraphTest.commit(store, "b\nwith two lines",
+                2000, a.getUID());
+            journal.add(b, store);
+            assertEquals(rebuilt + entry(b),
+                contents(new CommitJournal(dir), store));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** Adding to a repository with no journal yet rebuilds it, which
+     *  covers the commit being added exactly once. */
+    @Test
+    public void addWithoutJournal() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            Commit root = CommitGraphTest.commit(store, "initial commit", 0);
+            CommitJournal journal = new CommitJournal(dir);
+            journal.add(root, store);
+            assertEquals(entry(root), contents(journal, store));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
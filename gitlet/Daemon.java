@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A long-lived process that runs gitlet commands for clients, so the
+ *  JVM, loaded classes, object caches and mapped pack and commit-graph
+ *  files stay warm between commands.
+ *
+ *  The daemon serves the repository in the directory it was started in
+ *  and listens on the Unix domain socket .gitlet/daemon.sock.  A client
+ *  connects, writes each argument followed by a NUL byte, and shuts
+ *  down its side of the connection.  The daemon runs the command and
+ *  writes everything it prints to the connection, then closes it.
+ *  Commands run one at a time, in the order they are accepted.
+ *  @author Janani Sriram
+ */
+class Daemon {
+
+    /** Name of the socket inside the metadata folder. */
+    static final String SOCKET_NAME = "daemon.sock";
+
+    /** Socket file clients connect to. */
+    private final File _socket;
+
+    /** A daemon for the repository whose metadata folder is
+     *  GITLETFOLDER. */
+    Daemon(File gitletFolder) {
+        _socket = Utils.join(gitletFolder, SOCKET_NAME);
+    }
+
+    /** Listens for commands until the process is stopped.  Returns
+     *  false at once if another daemon is already serving the
+     *  repository. */
+    boolean serve() {
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(_socket.toPath());
+        if (_socket.exists()) {
+            if (isRunning(address)) {
+                return false;
+            }
+            _socket.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(_socket::delete));
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff a daemon accepts connections at ADDRESS. */
+    private static boolean isRunning(UnixDomainSocketAddress address) {
+        try (SocketChannel probe =
+                 SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(address);
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Reads one command from CLIENT, runs it, and sends back its
+     *  output. */
+    private void handle(SocketChannel client) throws IOException {
+        String[] args = readArgs(Channels.newInputStream(client));
+        OutputStream out = Channels.newOutputStream(client);
+        PrintStream reply = new PrintStream(out, false,
+            StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(reply);
+        System.setErr(reply);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                System.out.println("A daemon is already running.");
+            } else {
+                Repository.refresh();
+                Main.main(args);
+            }
+        } catch (RuntimeException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            reply.flush();
+        }
+    }
+
+    /** Returns the NUL-terminated arguments read from IN up to the end
+     *  of the stream. */
+    private static String[] readArgs(InputStream in) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        in.transferTo(request);
+        byte[] bytes = request.toByteArray();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] == 0) {
+                args.add(new String(bytes, start, i - start,
+                    StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
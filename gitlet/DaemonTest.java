@@ -0,0 +1,194 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Tests of the daemon's socket protocol.
+ *  @author Janani Sriram
+ */
+public class DaemonTest {
+
+    /** Longest wait for the daemon to start or answer, in ms. */
+    static final int WAIT = 10000;
+
+    /** Cache statistics line printed after each command. */
+    static final Pattern CACHE_STATS =
+        Pattern.compile("cache: (\\d+) hits, (\\d+) misses\n\\z");
+
+    /** Starts a daemon for the metadata folder DIR on a background
+     *  thread and waits until it answers. */
+    static void start(File dir) throws Exception {
+        Thread server = new Thread(() -> new Daemon(dir).serve());
+        server.setDaemon(true);
+        server.start();
+        await(dir);
+    }
+
+    /** Waits until the daemon of metadata folder DIR answers. */
+    static void await(File dir) throws Exception {
+        for (int t = 0; t < WAIT; t += 10) {
+            try {
+                send(dir);
+                return;
+            } catch (IOException excp) {
+                Thread.sleep(10);
+            }
+        }
+        fail("daemon did not start");
+    }
+
+    /** Sends ARGS to the daemon of metadata folder DIR and returns its
+     *  reply. */
+    static String send(File dir, String... args) throws IOException {
+        try (SocketChannel channel =
+                 SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(
+                new File(dir, Daemon.SOCKET_NAME).toPath()));
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            channel.write(ByteBuffer.wrap(request.toByteArray()));
+            channel.shutdownOutput();
+            return new String(Channels.newInputStream(channel)
+                .readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Commands sent over the socket run one per connection, and their
+     *  output comes back. */
+    @Test
+    public void runsCommands() throws Exception {
+        File dir = ChunkerTest.tempDir();
+        try {
+            start(dir);
+            assertEquals("A daemon is already running.\n",
+                send(dir, "daemon"));
+            assertEquals("No command with that name exists.\n",
+                send(dir, "no-such-command"));
+            assertEquals("Please enter a command.\n", send(dir));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A second daemon for the same repository declines to start and
+     *  leaves the first one serving. */
+    @Test
+    public void secondDaemonRefuses() throws Exception {
+        File dir = ChunkerTest.tempDir();
+        try {
+            start(dir);
+            assertFalse(new Daemon(dir).serve());
+            assertEquals("A daemon is already running.\n",
+                send(dir, "daemon"));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** Returns a process running gitlet in directory DIR with arguments
+     *  ARGS, printing cache statistics after each command. */
+    static ProcessBuilder gitlet(File dir, String... args) {
+        List<String> command = new ArrayList<>(List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString(),
+            "-cp", System.getProperty("java.class.path"),
+            "-Dgitlet.cacheStats=true", "gitlet.Main"));
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true);
+    }
+
+    /** Runs gitlet with arguments ARGS in a JVM of its own, in directory
+     *  DIR, and returns its output. */
+    static String run(File dir, String... args) throws Exception {
+        Process process = gitlet(dir, args).start();
+        String out = new String(process.getInputStream().readAllBytes(),
+            StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor());
+        return out;
+    }
+
+    /** Returns OUT without its closing cache statistics line. */
+    static String output(String out) {
+        Matcher stats = CACHE_STATS.matcher(out);
+        assertTrue(stats.find());
+        return out.substring(0, stats.start());
+    }
+
+    /** Returns the cache hits and misses OUT reports. */
+    static long[] stats(String out) {
+        Matcher stats = CACHE_STATS.matcher(out);
+        assertTrue(stats.find());
+        return new long[] {
+            Long.parseLong(stats.group(1)), Long.parseLong(stats.group(2))
+        };
+    }
+
+    /** Commands sent to a daemon and run by plain JVMs on the same
+     *  repository, alternately, each see what the others did.  The
+     *  daemon keeps its cached commits across commands, so later ones
+     *  read only the commits that are new. */
+    @Test
+    public void alternatesWithPlainCommands() throws Exception {
+        File work = ChunkerTest.tempDir();
+        File dir = new File(work, ".gitlet");
+        Process daemon = null;
+        try {
+            run(work, "init");
+            Utils.writeContents(new File(work, "a.txt"), "a\n");
+            run(work, "add", "a.txt");
+            run(work, "commit", "one");
+            daemon = gitlet(work, "daemon").start();
+            await(dir);
+
+            String log = send(dir, "log");
+            assertEquals(output(run(work, "log")), output(log));
+            long[] first = stats(log);
+            long[] again = stats(send(dir, "log"));
+            assertEquals(first[1], again[1]);
+            assertTrue(again[0] >= first[0] + 2);
+
+            Utils.writeContents(new File(work, "b.txt"), "b\n");
+            run(work, "add", "b.txt");
+            run(work, "commit", "two");
+            log = send(dir, "log");
+            assertTrue(output(log).matches("(?s)===\ncommit \\S+\n[^\n]*\n"
+                + "two\n\n===\n.*one\n\n===\n.*initial commit\n\n"));
+            assertEquals(again[1] + 1, stats(log)[1]);
+
+            Utils.writeContents(new File(work, "c.txt"), "c\n");
+            assertEquals("", output(send(dir, "add", "c.txt")));
+            assertEquals("", output(send(dir, "commit", "three")));
+            run(work, "gc");
+            assertEquals(output(run(work, "log")),
+                output(send(dir, "log")));
+            assertEquals(output(run(work, "status")),
+                output(send(dir, "status")));
+            assertTrue(output(run(work, "log")).contains("three"));
+        } finally {
+            if (daemon != null) {
+                daemon.destroy();
+                daemon.waitFor();
+            }
+            ChunkerTest.delete(work);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Delta encoding of one object against a base object.  A delta is the
+ *  base and target sizes followed by a list of instructions, each either
+ *  INSERT (literal bytes) or COPY (a range of the base).  All numbers are
+ *  unsigned little-endian base-128 varints.
+ *  @author Janani Sriram
+ */
+class Delta {
+
+    /** Instruction inserting literal bytes. */
+    static final int INSERT = 0;
+
+    /** Instruction copying a range of the base. */
+    static final int COPY = 1;
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+
+    /** Returns a delta that rebuilds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = index.get(hash(target, i));
+            if (candidate == null || !Arrays.equals(base, candidate,
+                    candidate + BLOCK, target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = candidate;
+            int length = BLOCK;
+            while (start + length < base.length
+                    && i + length < target.length
+                    && base[start + length] == target[i + length]) {
+                length += 1;
+            }
+            while (start > 0 && i > pending
+                    && base[start - 1] == target[i - 1]) {
+                start -= 1;
+                i -= 1;
+                length += 1;
+            }
+            writeInsert(out, target, pending, i);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, length);
+            i += length;
+            pending = i;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA, starting at OFFSET, to
+     *  BASE. */
+    static byte[] apply(byte[] base, byte[] delta, int offset) {
+        int[] pos = {offset};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta base mismatch");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int start = (int) readVarint(delta, pos);
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(base, start, result, size, length);
+                size += length;
+            } else {
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, length);
+                pos[0] += length;
+                size += length;
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes an INSERT of TARGET[FROM .. TO) to OUT, if it is not
+     *  empty. */
+    private static void writeInsert(ByteArrayOutputStream out,
+                                    byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Writes VALUE to OUT as a varint. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Returns the varint in DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]];
+            pos[0] += 1;
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
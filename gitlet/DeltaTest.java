@@ -0,0 +1,135 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of delta encoding and of delta chains in packs.
+ *  @author Janani Sriram
+ */
+public class DeltaTest {
+
+    /** Returns a text of LINES numbered lines. */
+    static byte[] text(int lines) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            out.append("line ").append(i).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns DATA with LENGTH bytes at AT replaced by WITH. */
+    static byte[] splice(byte[] data, int at, int length, String with) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data, 0, at);
+        out.writeBytes(with.getBytes(StandardCharsets.UTF_8));
+        out.write(data, at + length, data.length - at - length);
+        return out.toByteArray();
+    }
+
+    /** Asserts that the delta from BASE to TARGET rebuilds TARGET. */
+    static void assertRoundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta, 0));
+    }
+
+    /** Deltas between edited versions rebuild the target and are much
+     *  smaller than it. */
+    @Test
+    public void editsRoundTrip() {
+        byte[] base = text(2000);
+        byte[] target = splice(splice(base, 100, 20, "changed"),
+            9000, 0, "inserted\n");
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta, 0));
+        assertTrue(delta.length < target.length / 10);
+    }
+
+    /** Empty, identical, unrelated and short inputs all round-trip. */
+    @Test
+    public void edgeCases() {
+        byte[] text = text(100);
+        assertRoundTrip(new byte[0], new byte[0]);
+        assertRoundTrip(new byte[0], text);
+        assertRoundTrip(text, new byte[0]);
+        assertRoundTrip(text, text);
+        assertRoundTrip(text, "short".getBytes(StandardCharsets.UTF_8));
+        byte[] noise = new byte[5000];
+        new Random(1).nextBytes(noise);
+        assertRoundTrip(text, noise);
+        assertRoundTrip(noise, text);
+    }
+
+    /** A delta applied from an offset skips what comes before it. */
+    @Test
+    public void applyFromOffset() {
+        byte[] base = text(50);
+        byte[] target = splice(base, 10, 5, "x");
+        byte[] delta = Delta.create(base, target);
+        byte[] prefixed = new byte[delta.length + 21];
+        System.arraycopy(delta, 0, prefixed, 21, delta.length);
+        assertArrayEquals(target, Delta.apply(base, prefixed, 21));
+    }
+
+    /** Applying a delta to the wrong base is rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongBase() {
+        byte[] base = text(50);
+        Delta.apply(text(40), Delta.create(base, splice(base, 0, 1, "y")),
+            0);
+    }
+
+    /** Varints round-trip across byte boundaries. */
+    @Test
+    public void varints() {
+        long[] values = {0, 1, 127, 128, 300, 1L << 31, Long.MAX_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            Delta.writeVarint(out, value);
+        }
+        byte[] data = out.toByteArray();
+        int[] pos = {0};
+        for (long value : values) {
+            assertEquals(value, Delta.readVarint(data, pos));
+        }
+        assertEquals(data.length, pos[0]);
+    }
+
+    /** Every version of a path reads back after repacks that store
+     *  them as delta chains longer than MAX_DELTA_DEPTH, including
+     *  chains whose bases were packed by an earlier repack. */
+    @Test
+    public void deltaChainsInPacks() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(dir);
+            List<byte[]> versions = new ArrayList<>();
+            List<ObjectId> ids = new ArrayList<>();
+            byte[] data = text(1000);
+            for (int v = 0; v < 3 * ObjectStore.MAX_DELTA_DEPTH; v += 1) {
+                data = splice(data, 37 * v, 3, "v" + v);
+                ObjectId id = ObjectId.hash(data);
+                store.write(id, ObjectStore.BLOB, data);
+                versions.add(data);
+                ids.add(0, id);
+                if (v == ObjectStore.MAX_DELTA_DEPTH) {
+                    store.repack(List.of(new ArrayList<>(ids)));
+                }
+            }
+            store.repack(List.of(ids));
+            for (int v = 0; v < versions.size(); v += 1) {
+                assertArrayEquals(versions.get(v),
+                    store.read(ids.get(ids.size() - 1 - v)));
+            }
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A line-by-line comparison of two texts, and its unified output.
+ *
+ *  Each text is read as a stream, split into lines and each line hashed
+ *  as it goes by; lines are then interned, so that equal lines on either
+ *  side get the same small integer and the algorithms compare integers.
+ *  The result is one flag per line of each side telling whether it was
+ *  deleted (old side) or inserted (new side); the unflagged lines of the
+ *  two sides match up in order.  Memory is linear in the size of the
+ *  texts.
+ *
+ *  Regions are first trimmed of their common prefix and suffix.  Then, as
+ *  in Git's histogram diff, the line of the old region that occurs least
+ *  often (and at most MAX_CHAIN times) and also occurs in the new region
+ *  is matched, the match is grown in both directions, and the regions on
+ *  either side of it are compared in turn.  A region with no such line
+ *  is compared with Myers' linear-space O(ND) algorithm, which gives up
+ *  looking for the best split after MAX_COST edits and takes the
+ *  furthest-reaching one instead.  Regions are kept on an explicit
+ *  stack, so long texts cannot overflow the call stack.
+ *  @author Janani Sriram
+ */
+class Diff {
+
+    /** Lines of context around each hunk of unified output. */
+    static final int CONTEXT = 3;
+
+    /** Most occurrences of a line for it to anchor a histogram split. */
+    static final int MAX_CHAIN = 64;
+
+    /** Edit distance after which Myers' search settles for a split. */
+    static final int MAX_COST = 1024;
+
+    /** Number of leading bytes checked for NULs to detect binary
+     *  texts. */
+    static final int BINARY_PROBE = 8000;
+
+    /** The old text. */
+    private final Lines _old;
+
+    /** The new text. */
+    private final Lines _new;
+
+    /** Interned lines of the old text. */
+    private final int[] _a;
+
+    /** Interned lines of the new text. */
+    private final int[] _b;
+
+    /** Which lines of the old text are deleted. */
+    private final boolean[] _deleted;
+
+    /** Which lines of the new text are inserted. */
+    private final boolean[] _inserted;
+
+    /** Occurrences of each interned line in the region being split by
+     *  histogramSplit; zero outside it. */
+    private final int[] _count;
+
+    /** First occurrence of each interned line in the region being split
+     *  by histogramSplit. */
+    private final int[] _first;
+
+    /** Position of the next line of the old text equal to each line, or
+     *  the number of lines if there is none. */
+    private final int[] _nextSame;
+
+    /** Forward furthest-reaching paths of the current Myers search. */
+    private int[] _forward = new int[0];
+
+    /** Backward furthest-reaching paths of the current Myers search. */
+    private int[] _backward = new int[0];
+
+    /** The comparison of OLDTEXT with NEWTEXT. */
+    Diff(Lines oldText, Lines newText) {
+        _old = oldText;
+        _new = newText;
+        HashMap<Line, Integer> ids = new HashMap<>();
+        _a = oldText.intern(ids);
+        _b = newText.intern(ids);
+        _deleted = new boolean[_a.length];
+        _inserted = new boolean[_b.length];
+        _count = new int[ids.size()];
+        _first = new int[ids.size()];
+        _nextSame = new int[_a.length];
+        Arrays.fill(_first, _a.length);
+        for (int i = _a.length - 1; i >= 0; i -= 1) {
+            _nextSame[i] = _first[_a[i]];
+            _first[_a[i]] = i;
+        }
+        compare();
+    }
+
+    /** Returns the comparison of blobs OLDBLOB and NEWBLOB in STORE,
+     *  either of which may be null for an empty text. */
+    static Diff blobs(ObjectStore store, ObjectId oldBlob, ObjectId newBlob) {
+        return new Diff(Lines.read(store, oldBlob), Lines.read(store, newBlob));
+    }
+
+    /** Returns the number of lines of the old text. */
+    int oldSize() {
+        return _a.length;
+    }
+
+    /** Returns the number of lines of the new text. */
+    int newSize() {
+        return _b.length;
+    }
+
+    /** Returns true iff line I of the old text is deleted. */
+    boolean deleted(int i) {
+        return _deleted[i];
+    }
+
+    /** Returns true iff line J of the new text is inserted. */
+    boolean inserted(int j) {
+        return _inserted[j];
+    }
+
+    /** Returns true iff the texts are the same. */
+    boolean isEmpty() {
+        for (boolean d : _deleted) {
+            if (d) {
+                return false;
+            }
+        }
+        for (boolean i : _inserted) {
+            if (i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes the differences to OUT in unified format, with the old and
+     *  new texts labelled OLDNAME and NEWNAME in the header, unless there
+     *  are none. */
+    void writeUnified(PrintStream out, String oldName, String newName) {
+        if (isEmpty()) {
+            return;
+        }
+        out.println("--- " + oldName);
+        out.println("+++ " + newName);
+        if (_old.isBinary() || _new.isBinary()) {
+            out.println("Binary files differ");
+            return;
+        }
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < _a.length && j < _b.length
+                   && !_deleted[i] && !_inserted[j]) {
+                i += 1;
+                j += 1;
+            }
+            if (i == _a.length && j == _b.length) {
+                break;
+            }
+            int startA = Math.max(0, i - CONTEXT);
+            int startB = j - (i - startA);
+            int endA = i;
+            int endB = j;
+            int equal = 0;
+            while (endA < _a.length || endB < _b.length) {
+                if (endA < _a.length && _deleted[endA]) {
+                    endA += 1;
+                    equal = 0;
+                } else if (endB < _b.length && _inserted[endB]) {
+                    endB += 1;
+                    equal = 0;
+                } else if (equal < 2 * CONTEXT) {
+                    endA += 1;
+                    endB += 1;
+                    equal += 1;
+                } else {
+                    break;
+                }
+            }
+            int trail = Math.max(0, equal - CONTEXT);
+            endA -= trail;
+            endB -= trail;
+            writeHunk(out, startA, endA, startB, endB);
+            i = endA;
+            j = endB;
+        }
+        out.flush();
+    }
+
+    /** Writes the hunk covering lines STARTA to ENDA of the old text and
+     *  STARTB to ENDB of the new one to OUT. */
+    private void writeHunk(PrintStream out, int startA, int endA,
+                           int startB, int endB) {
+        out.println("@@ -" + range(startA, endA) + " +"
+            + range(startB, endB) + " @@");
+        int i = startA;
+        int j = startB;
+        while (i < endA || j < endB) {
+            if (i < endA && _deleted[i]) {
+                writeLine(out, '-', _old, i);
+                i += 1;
+            } else if (j < endB && _inserted[j]) {
+                writeLine(out, '+', _new, j);
+                j += 1;
+            } else {
+                writeLine(out, ' ', _old, i);
+                i += 1;
+                j += 1;
+            }
+        }
+    }
+
+    /** Returns the range of lines START to END in hunk-header form. */
+    private static String range(int start, int end) {
+        int count = end - start;
+        int first = count == 0 ? start : start + 1;
+        return count == 1 ? Integer.toString(first) : first + "," + count;
+    }
+
+    /** Writes line I of TEXT to OUT, marked with MARK. */
+    private static void writeLine(PrintStream out, char mark, Lines text,
+                                  int i) {
+        out.print(mark);
+        text.write(out, i);
+        if (!text.endsWithNewline(i)) {
+            out.println();
+            out.println("\\ No newline at end of file");
+        }
+    }
+
+    /** Flags the deleted and inserted lines. */
+    private void compare() {
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {0, _a.length, 0, _b.length});
+        while (!regions.isEmpty()) {
+            int[] r = regions.pop();
+            int aLo = r[0];
+            int aHi = r[1];
+            int bLo = r[2];
+            int bHi = r[3];
+            while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                Arrays.fill(_deleted, aLo, aHi, true);
+                Arrays.fill(_inserted, bLo, bHi, true);
+                continue;
+            }
+            int[] split = histogramSplit(aLo, aHi, bLo, bHi);
+            if (split == null) {
+                split = myersSplit(aLo, aHi, bLo, bHi);
+            }
+            regions.push(new int[] {aLo, split[0], bLo, split[1]});
+            regions.push(new int[] {split[2], aHi, split[3], bHi});
+        }
+    }
+
+    /** Returns the longest run of matching lines, within old lines ALO to
+     *  AHI and new lines BLO to BHI, around the line occurring least
+     *  often in the old ones, as {old start, new start, old end, new
+     *  end}; or null if no line occurring at most MAX_CHAIN times is in
+     *  both. */
+    private int[] histogramSplit(int aLo, int aHi, int bLo, int bHi) {
+        for (int i = aHi - 1; i >= aLo; i -= 1) {
+            _first[_a[i]] = i;
+            _count[_a[i]] += 1;
+        }
+        int[] best = null;
+        int bestCount = MAX_CHAIN + 1;
+        int bestLength = 0;
+        for (int j = bLo; j < bHi; j += 1) {
+            int count = _count[_b[j]];
+            if (count == 0 || count > MAX_CHAIN || count > bestCount) {
+                continue;
+            }
+            int next = j + 1;
+            for (int i = _first[_b[j]]; i < aHi; i = _nextSame[i]) {
+                int sa = i;
+                int sb = j;
+                while (sa > aLo && sb > bLo && _a[sa - 1] == _b[sb - 1]) {
+                    sa -= 1;
+                    sb -= 1;
+                }
+                int ea = i + 1;
+                int eb = j + 1;
+                while (ea < aHi && eb < bHi && _a[ea] == _b[eb]) {
+                    ea += 1;
+                    eb += 1;
+                }
+                if (count < bestCount || ea - sa > bestLength) {
+                    best = new int[] {sa, sb, ea, eb};
+                    bestCount = count;
+                    bestLength = ea - sa;
+                }
+                next = Math.max(next, eb);
+            }
+            j = next - 1;
+        }
+        for (int i = aLo; i < aHi; i += 1) {
+            _count[_a[i]] = 0;
+        }
+        return best;
+    }
+
+    /** Returns the middle snake of a shortest edit script between old
+     *  lines ALO to AHI and new lines BLO to BHI, as {old start, new
+     *  start, old end, new end}, or a split at the furthest-reaching path
+     *  if the script is longer than 2 * MAX_COST.  Both regions must be
+     *  non-empty and differ in their first and last lines, so the split
+     *  leaves edits on both of its sides.
+     *
+     *  Paths are searched forwards from the start and backwards from the
+     *  end at once.  _forward[OFFSET + K] is how far along diagonal K
+     *  (old minus new position) the forward paths reach, and _backward
+     *  the same for the backward paths, in lines from the end; -1 marks a
+     *  diagonal no path reaches without leaving the regions. */
+    private int[] myersSplit(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int limit = Math.min((n + m + 1) / 2, MAX_COST);
+        int offset = limit + 1;
+        if (_forward.length < 2 * offset + 1) {
+            _forward = new int[2 * offset + 1];
+            _backward = new int[2 * offset + 1];
+        }
+        int[] vf = _forward;
+        int[] vb = _backward;
+        for (int d = 0; d <= limit; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = reach(vf, offset, k, d, n, m);
+                if (x < 0) {
+                    continue;
+                }
+                int x0 = x;
+                while (x < n && x - k < m && _a[aLo + x] == _b[bLo + x - k]) {
+                    x += 1;
+                }
+                vf[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1
+                        && vb[offset + c] >= 0 && x + vb[offset + c] >= n) {
+                    return new int[] {aLo + x0, bLo + x0 - k,
+                                      aLo + x, bLo + x - k};
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x = reach(vb, offset, c, d, n, m);
+                if (x < 0) {
+                    continue;
+                }
+                int x0 = x;
+                while (x < n && x - c < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - (x - c)]) {
+                    x += 1;
+                }
+                vb[offset + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d
+                        && vf[offset + k] >= 0 && x + vf[offset + k] >= n) {
+                    return new int[] {aHi - x, bHi - (x - c),
+                                      aHi - x0, bHi - (x0 - c)};
+                }
+            }
+        }
+        int bestK = 0;
+        int bestReach = -1;
+        for (int k = -limit; k <= limit; k += 2) {
+            int x = vf[offset + k];
+            if (x >= 0 && 2 * x - k > bestReach) {
+                bestK = k;
+                bestReach = 2 * x - k;
+            }
+        }
+        int x = vf[offset + bestK];
+        return new int[] {aLo + x, bLo + x - bestK, aLo + x, bLo + x - bestK};
+    }
+
+    /** Returns how far along diagonal K a path of D edits can start its
+     *  final snake, given in V (with OFFSET) how far paths of D - 1 edits
+     *  reach, in a grid of N old and M new lines; or -1 if no such path
+     *  stays in the grid.  A path extends one of its neighbours: down
+     *  from diagonal K + 1 (an inserted line) or right from K - 1 (a
+     *  deleted line), whichever gets further. */
+    private static int reach(int[] v, int offset, int k, int d, int n,
+                             int m) {
+        if (d == 0) {
+            return 0;
+        }
+        int down = -1;
+        if (k < d && v[offset + k + 1] >= 0
+                && v[offset + k + 1] - k <= m) {
+            down = v[offset + k + 1];
+        }
+        int right = -1;
+        if (k > -d && v[offset + k - 1] >= 0
+                && v[offset + k - 1] + 1 <= n) {
+            right = v[offset + k - 1] + 1;
+        }
+        v[offset + k] = Math.max(down, right);
+        return v[offset + k];
+    }
+
+    /** One line of a text, as a key for interning. */
+    private static final class Line {
+
+        /** Text holding the line. */
+        private final Lines _text;
+
+        /** Index of the line in _text. */
+        private final int _index;
+
+        /** Line INDEX of TEXT. */
+        Line(Lines text, int index) {
+            _text = text;
+            _index = index;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _text.sameLine(_index, other._text, other._index);
+        }
+
+        @Override
+        public int hashCode() {
+            return _text.hash(_index);
+        }
+    }
+
+    /** The lines of a text, each with its hash. */
+    static final class Lines {
+
+        /** Bytes of the text. */
+        private final byte[] _data;
+
+        /** Start of each line in _data, then the end of the text. */
+        private final int[] _starts;
+
+        /** Hash of each line. */
+        private final int[] _hashes;
+
+        /** The text DATA, whose lines start at STARTS and hash to
+         *  HASHES. */
+        private Lines(byte[] data, int[] starts, int[] hashes) {
+            _data = data;
+            _starts = starts;
+            _hashes = hashes;
+        }
+
+        /** Returns the lines of blob ID in STORE, or of an empty text if
+         *  ID is null. */
+        static Lines read(ObjectStore store, ObjectId id) {
+            if (id == null) {
+                return read(new ByteArrayInputStream(new byte[0]));
+            }
+            try (InputStream in = store.open(id)) {
+                return read(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the lines of FILE. */
+        static Lines read(File file) {
+            try (InputStream in = new FileInputStream(file)) {
+                return read(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the lines read from IN, hashing each as it is read. */
+        static Lines read(InputStream in) {
+            byte[] data = new byte[ObjectStore.BUFFER];
+            int size = 0;
+            int[] starts = new int[64];
+            int[] hashes = new int[64];
+            int lines = 0;
+            int hash = 0;
+            boolean inLine = false;
+            try {
+                for (int n = in.read(data, size, data.length - size); n >= 0;
+                     n = in.read(data, size, data.length - size)) {
+                    for (int p = size; p < size + n; p += 1) {
+                        if (!inLine) {
+                            if (lines + 1 >= starts.length) {
+                                starts = Arrays.copyOf(starts, 2 * lines + 2);
+                                hashes = Arrays.copyOf(hashes, 2 * lines + 2);
+                            }
+                            starts[lines] = p;
+                            hash = 0;
+                            inLine = true;
+                        }
+                        hash = 31 * hash + data[p];
+                        if (data[p] == '\n') {
+                            hashes[lines] = hash;
+                            lines += 1;
+                            inLine = false;
+                        }
+                    }
+                    size += n;
+                    if (size == data.length) {
+                        data = Arrays.copyOf(data, 2 * data.length);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (inLine) {
+                hashes[lines] = hash;
+                lines += 1;
+            }
+            starts = Arrays.copyOf(starts, lines + 1);
+            starts[lines] = size;
+            return new Lines(Arrays.copyOf(data, size), starts,
+                Arrays.copyOf(hashes, lines));
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return _hashes.length;
+        }
+
+        /** Returns the hash of line I. */
+        int hash(int i) {
+            return _hashes[i];
+        }
+
+        /** Returns true iff line I is the same as line J of OTHER. */
+        boolean sameLine(int i, Lines other, int j) {
+            return _hashes[i] == other._hashes[j]
+                && Arrays.equals(_data, _starts[i], _starts[i + 1],
+                    other._data, other._starts[j], other._starts[j + 1]);
+        }
+
+        /** Returns true iff line I ends with a newline. */
+        boolean endsWithNewline(int i) {
+            return _starts[i + 1] > _starts[i]
+                && _data[_starts[i + 1] - 1] == '\n';
+        }
+
+        /** Returns true iff the text looks binary: it has a NUL byte
+         *  among its first BINARY_PROBE bytes. */
+        boolean isBinary() {
+            for (int p = 0; p < Math.min(_data.length, BINARY_PROBE); p += 1) {
+                if (_data[p] == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Writes line I, with its newline if it has one, to OUT. */
+        void write(OutputStream out, int i) {
+            try {
+                out.write(_data, _starts[i], _starts[i + 1] - _starts[i]);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the lines as ids, interning each in IDS, which maps
+         *  lines seen so far to their ids. */
+        int[] intern(HashMap<Line, Integer> ids) {
+            int[] result = new int[size()];
+            for (int i = 0; i < result.length; i += 1) {
+                Integer id = ids.putIfAbsent(new Line(this, i), ids.size());
+                result[i] = id == null ? ids.size() - 1 : id;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** Tests of line diffs and their unified output.
+ *  @author Janani Sriram
+ */
+public class DiffTest {
+
+    /** Returns the lines of TEXT. */
+    static Diff.Lines lines(String text) {
+        return lines(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the lines of DATA. */
+    static Diff.Lines lines(byte[] data) {
+        return Diff.Lines.read(new ByteArrayInputStream(data));
+    }
+
+    /** Returns the unified diff of OLDTEXT and NEWTEXT, labelled a and
+     *  b. */
+    static String unified(String oldText, String newText) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true,
+            StandardCharsets.UTF_8);
+        new Diff(lines(oldText), lines(newText)).writeUnified(out, "a", "b");
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the numbers FROM to TO, one per line. */
+    static String numbers(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i <= to; i += 1) {
+            text.append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Asserts that the unflagged lines of DIFF, comparing OLDTEXT with
+     *  NEWTEXT, match up in order, and returns the number of lines
+     *  deleted or inserted. */
+    static int assertConsistent(Diff diff, Diff.Lines oldText,
+                                Diff.Lines newText) {
+        int i = 0;
+        int j = 0;
+        int edits = 0;
+        while (true) {
+            while (i < diff.oldSize() && diff.deleted(i)) {
+                i += 1;
+                edits += 1;
+            }
+            while (j < diff.newSize() && diff.inserted(j)) {
+                j += 1;
+                edits += 1;
+            }
+            if (i == diff.oldSize() || j == diff.newSize()) {
+                break;
+            }
+            assertTrue(oldText.sameLine(i, newText, j));
+            i += 1;
+            j += 1;
+        }
+        assertEquals(diff.oldSize(), i);
+        assertEquals(diff.newSize(), j);
+        return edits;
+    }
+
+    /** Texts split into lines, with or without a final newline. */
+    @Test
+    public void splitsLines() {
+        assertEquals(0, lines("").size());
+        Diff.Lines text = lines("a\n\nb");
+        assertEquals(3, text.size());
+        assertTrue(text.endsWithNewline(1));
+        assertFalse(text.endsWithNewline(2));
+        assertTrue(text.sameLine(0, lines("a\n"), 0));
+        assertFalse(text.sameLine(2, lines("b\n"), 0));
+    }
+
+    /** Changes far apart get hunks of their own, each with CONTEXT
+     *  lines of context; nearby ones share a hunk. */
+    @Test
+    public void hunks() {
+        String oldText = numbers(1, 30);
+        String newText = oldText.replace("\n5\n", "\nfive\n")
+            .replace("\n8\n", "\n").replace("\n25\n", "\n25\n25.5\n");
+        assertEquals("--- a\n+++ b\n"
+            + "@@ -2,10 +2,9 @@\n 2\n 3\n 4\n-5\n+five\n 6\n 7\n-8\n"
+            + " 9\n 10\n 11\n"
+            + "@@ -23,6 +22,7 @@\n 23\n 24\n 25\n+25.5\n 26\n 27\n 28\n",
+            unified(oldText, newText));
+        assertEquals("", unified(oldText, oldText));
+        assertEquals("--- a\n+++ b\n@@ -0,0 +1,2 @@\n+1\n+2\n",
+            unified("", numbers(1, 2)));
+    }
+
+    /** A last line without a newline is marked as such, on either
+     *  side. */
+    @Test
+    public void noNewlineAtEnd() {
+        assertEquals("--- a\n+++ b\n@@ -1,2 +1,2 @@\n a\n-b\n"
+            + "\\ No newline at end of file\n+b\n",
+            unified("a\nb", "a\nb\n"));
+        assertEquals("--- a\n+++ b\n@@ -1 +1 @@\n-a\n+c\n"
+            + "\\ No newline at end of file\n",
+            unified("a\n", "c"));
+    }
+
+    /** Texts with a NUL byte are reported as binary. */
+    @Test
+    public void binary() {
+        assertEquals("--- a\n+++ b\nBinary files differ\n",
+            unified("text\n", "bin\0ary\n"));
+        assertTrue(lines("bin\0ary").isBinary());
+        assertFalse(lines("text").isBinary());
+    }
+
+    /** Random edits of texts from small and large alphabets give
+     *  consistent diffs, and a single changed line in a long text is
+     *  found as exactly that. */
+    @Test
+    public void consistentOnRandomTexts() {
+        Random random = new Random(25);
+        for (int trial = 0; trial < 500; trial += 1) {
+            int alphabet = 1 + random.nextInt(trial % 2 == 0 ? 4 : 1000);
+            StringBuilder oldText = new StringBuilder();
+            StringBuilder newText = new StringBuilder();
+            for (int n = random.nextInt(200); n > 0; n -= 1) {
+                String line = random.nextInt(alphabet) + "\n";
+                if (random.nextInt(4) != 0) {
+                    oldText.append(line);
+                }
+                if (random.nextInt(4) != 0) {
+                    newText.append(line);
+                }
+            }
+            Diff.Lines a = lines(oldText.toString());
+            Diff.Lines b = lines(newText.toString());
+            assertConsistent(new Diff(a, b), a, b);
+        }
+        Diff.Lines a = lines(numbers(1, 100000));
+        Diff.Lines b = lines(numbers(1, 49999) + "x\n"
+            + numbers(50001, 100000));
+        assertEquals(2, assertConsistent(new Diff(a, b), a, b));
+    }
+}
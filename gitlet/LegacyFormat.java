@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Readers for the commits and staging area of a repository made before
+ *  they had binary codecs, when both were saved with Java serialization
+ *  as instances of classes gitlet.Commit and gitlet.StagingArea.
+ *
+ *  Those classes no longer exist in that form, so such a file is read
+ *  into a stand-in with the same field names: the name and
+ *  serialVersionUID of the class in the stream are replaced by those of
+ *  the stand-in before Utils.deserialize reads it.  Fields are matched
+ *  by name; older versions of gitlet.Commit named its fields with a
+ *  "this" prefix, and the stand-in declares both sets.
+ *  @author Janani Sriram
+ */
+class LegacyFormat {
+
+    /** First two bytes of every Java serialization stream. */
+    private static final int STREAM_MAGIC = 0xaced;
+
+    /** Offset of the name of the class of the object a stream holds,
+     *  after the stream header, TC_OBJECT and TC_CLASSDESC. */
+    private static final int CLASS_NAME = 6;
+
+    /** Format of the timestamps of serialized commits. */
+    private static final String TIMESTAMP_FORMAT =
+        "EEE MMM d HH:mm:ss yyyy Z";
+
+    /** Returns true iff DATA is a Java serialization stream. */
+    static boolean isSerialized(byte[] data) {
+        return data.length > CLASS_NAME
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == STREAM_MAGIC;
+    }
+
+    /** Returns the serialized gitlet.Commit DATA holds. */
+    static SerializedCommit readCommit(byte[] data) {
+        return read(data, "gitlet.Commit", SerializedCommit.class);
+    }
+
+    /** Returns the serialized gitlet.StagingArea DATA holds. */
+    static SerializedStage readStage(byte[] data) {
+        return read(data, "gitlet.StagingArea", SerializedStage.class);
+    }
+
+    /** Returns the object of class STREAMCLASS held by the Java
+     *  serialization stream DATA, read as an instance of the stand-in
+     *  STANDIN. */
+    private static <T extends Serializable> T read(byte[] data,
+                                                   String streamClass,
+                                                   Class<T> standIn) {
+        if (!isSerialized(data) || data[4] != 0x73 || data[5] != 0x72) {
+            throw new IllegalArgumentException("not a serialized "
+                + streamClass);
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        in.position(CLASS_NAME);
+        int nameLength = in.getShort() & 0xffff;
+        String name = new String(data, in.position(), nameLength,
+            StandardCharsets.UTF_8);
+        if (!name.equals(streamClass)) {
+            throw new IllegalArgumentException("expected a serialized "
+                + streamClass + ", found " + name);
+        }
+        int rest = CLASS_NAME + 2 + nameLength + 8;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(data, 0, CLASS_NAME);
+            out.writeUTF(standIn.getName());
+            out.writeLong(ObjectStreamClass.lookup(standIn)
+                .getSerialVersionUID());
+            out.write(data, rest, data.length - rest);
+            out.close();
+            return Utils.deserialize(bytes.toByteArray(), standIn);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns an empty map if MAP is null, else MAP. */
+    private static HashMap<String, String> orEmpty(
+            HashMap<String, String> map) {
+        return map == null ? new HashMap<>() : map;
+    }
+
+    /** Stand-in for a serialized gitlet.Commit.  Field names are those
+     *  of the serialized class and must not change. */
+    static class SerializedCommit implements Serializable {
+
+        /** Fixed so that streams can be patched to match. */
+        private static final long serialVersionUID = 1L;
+
+        /** Commit message. */
+        private String message;
+
+        /** Commit message, as older versions named it. */
+        private String thismessage;
+
+        /** Commit time, formatted as TIMESTAMP_FORMAT. */
+        private String timestamp;
+
+        /** Commit time, as older versions named it. */
+        private String thistimestamp;
+
+        /** Parent UIDs; a single null if there is none. */
+        private ArrayList<String> parentUID;
+
+        /** Parent UIDs, as older versions named them. */
+        private ArrayList<String> thisparentUID;
+
+        /** The commit's own UID, as it recorded it. */
+        private String UID;
+
+        /** The commit's own UID, as older versions named it. */
+        private String thisUID;
+
+        /** UIDs of the tracked blobs, by file name. */
+        private HashMap<String, String> blobs;
+
+        /** Tracked blobs, as older versions named them. */
+        private HashMap<String, String> thisblobs;
+
+        /** Returns the commit message. */
+        String message() {
+            return message != null ? message : thismessage;
+        }
+
+        /** Returns the commit time in milliseconds since the epoch. */
+        long time() {
+            String stamp = timestamp != null ? timestamp : thistimestamp;
+            try {
+                if (stamp != null) {
+                    return new SimpleDateFormat(TIMESTAMP_FORMAT)
+                        .parse(stamp).getTime();
+                }
+            } catch (ParseException excp) {
+                /* Reported below. */
+            }
+            throw new IllegalArgumentException(
+                "bad timestamp in serialized commit: " + stamp);
+        }
+
+        /** Returns the UIDs of the parents, first parent first. */
+        List<String> parents() {
+            List<String> result = new ArrayList<>();
+            List<String> all = parentUID != null ? parentUID : thisparentUID;
+            if (all != null) {
+                for (String parent : all) {
+                    if (parent != null) {
+                        result.add(parent);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Returns the UIDs of the tracked blobs, by file name. */
+        Map<String, String> blobs() {
+            return orEmpty(blobs != null ? blobs : thisblobs);
+        }
+    }
+
+    /** Stand-in for a serialized gitlet.StagingArea.  Field names are
+     *  those of the serialized class and must not change. */
+    static class SerializedStage implements Serializable {
+
+        /** Fixed so that streams can be patched to match. */
+        private static final long serialVersionUID = 1L;
+
+        /** Files staged for addition: blob UIDs by file name. */
+        private HashMap<String, String> trackedFiles;
+
+        /** Files changed since staged; not kept across commands. */
+        private HashMap<String, String> modifiedFiles;
+
+        /** Files staged for removal, by file name. */
+        private HashMap<String, String> untrackedFiles;
+
+        /** A stage with ADDED staged for addition and the files named by
+         *  REMOVED staged for removal. */
+        SerializedStage(HashMap<String, String> added,
+                        HashMap<String, String> removed) {
+            trackedFiles = added;
+            modifiedFiles = new HashMap<>();
+            untrackedFiles = removed;
+        }
+
+        /** Returns the blob UIDs of files staged for addition, by file
+         *  name. */
+        Map<String, String> added() {
+            return orEmpty(trackedFiles);
+        }
+
+        /** Returns the names of the files staged for removal. */
+        List<String> removed() {
+            return new ArrayList<>(orEmpty(untrackedFiles).keySet());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Tests of reading the Java-serialized files of the first versions of
+ *  gitlet.
+ *  @author Janani Sriram
+ */
+public class LegacyFormatTest {
+
+    /** A commit "Two files" with parent 5a70b538... tracking f.txt and
+     *  g.txt, as the first versions of gitlet saved it. */
+    private static final String COMMIT =
+        "aced00057372000d6769746c65742e436f6d6d697498a7285deaf5bd98020005"
+        + "4c00035549447400124c6a6176612f6c616e672f537472696e673b4c0005626c"
+        + "6f62737400134c6a6176612f7574696c2f486173684d61703b4c00076d657373"
+        + "61676571007e00014c0009706172656e745549447400154c6a6176612f757469"
+        + "6c2f41727261794c6973743b4c000974696d657374616d7071007e0001787074"
+        + "0028663431633435343436616463373434626665383462633036396239633336"
+        + "61376330366433316131737200116a6176612e7574696c2e486173684d617005"
+        + "07dac1c31660d103000246000a6c6f6164466163746f72490009746872657368"
+        + "6f6c6478703f4000000000000c77080000001000000002740005672e74787474"
+        + "0028653437383862303763393566393238336230336634663430363732666437"
+        + "66333961306466366136740005662e7478747400283864323739326464396331"
+        + "3666636336633363363264343061306164636363313438393562626364787400"
+        + "0954776f2066696c6573737200136a6176612e7574696c2e41727261794c6973"
+        + "747881d21d99c7619d03000149000473697a6578700000000177040000000174"
+        + "0028356137306235333831316135633161653832316134633639356436653132"
+        + "663163663861323036307874001e576564204465632033312031363a30303a30"
+        + "302031393639202d30383030";
+
+    /** An empty staging area, as the first versions of gitlet saved
+     *  it. */
+    private static final String STAGE =
+        "aced0005737200126769746c65742e53746167696e674172656167c8804002e3"
+        + "f2770200034c000d6d6f64696669656446696c65737400134c6a6176612f7574"
+        + "696c2f486173684d61703b4c000c747261636b656446696c657371007e00014c"
+        + "000e756e747261636b656446696c657371007e00017870737200116a6176612e"
+        + "7574696c2e486173684d61700507dac1c31660d103000246000a6c6f61644661"
+        + "63746f724900097468726573686f6c6478703f40000000000000770800000010"
+        + "00000000787371007e00033f4000000000000077080000001000000000787371"
+        + "007e00033f400000000000007708000000100000000078";
+
+    /** Returns DATA, a Java serialization stream, with the class of the
+     *  object it holds renamed NAME, as if an instance of class NAME had
+     *  been serialized. */
+    static byte[] renamed(byte[] data, String name) throws IOException {
+        int nameLength = ByteBuffer.wrap(data, 6, 2).getShort();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(data, 0, 6);
+        out.writeUTF(name);
+        out.write(data, 8 + nameLength, data.length - 8 - nameLength);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** The fields of a serialized commit read back, whatever names the
+     *  version that saved it gave them. */
+    @Test
+    public void readsSerializedCommit() {
+        LegacyFormat.SerializedCommit commit =
+            LegacyFormat.readCommit(Utils.hexToBytes(COMMIT));
+        assertEquals("Two files", commit.message());
+        assertEquals(0, commit.time());
+        assertEquals(List.of("5a70b53811a5c1ae821a4c695d6e12f1cf8a2060"),
+            commit.parents());
+        assertEquals(Map.of(
+            "f.txt", "8d2792dd9c16fcc6c3c62d40a0adccc14895bbcd",
+            "g.txt", "e4788b07c95f9283b03f4f40672fd7f39a0df6a6"),
+            commit.blobs());
+    }
+
+    /** Decoding a serialized commit fails with a message saying how to
+     *  convert it, and a stream of another class is not read as a
+     *  commit. */
+    @Test
+    public void serializedCommitRefused() {
+        byte[] data = Utils.hexToBytes(COMMIT);
+        try {
+            Commit.decode(ObjectId.hash(data), data);
+            fail("serialized commit decoded");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("migrate"));
+        }
+        try {
+            LegacyFormat.readStage(data);
+            fail("commit read as a staging area");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("gitlet.Commit"));
+        }
+    }
+
+    /** A serialized stage.txt is read by StagingArea and replaced by a
+     *  table when written. */
+    @Test
+    public void readsSerializedStage() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            File legacy = new File(dir, "stage.txt");
+            Utils.writeContents(legacy, Utils.hexToBytes(STAGE));
+            assertTrue(new StagingArea(dir).isEmpty());
+
+            HashMap<String, String> added = new HashMap<>();
+            ObjectId blob = StagingAreaTest.blob("added");
+            added.put("added", blob.name());
+            HashMap<String, String> removed = new HashMap<>();
+            removed.put("removed", null);
+            Utils.writeContents(legacy, renamed(Utils.serialize(
+                new LegacyFormat.SerializedStage(added, removed)),
+                "gitlet.StagingArea"));
+            StagingArea stage = new StagingArea(dir);
+            assertEquals(Map.of("added", blob), stage.getTrackedFiles());
+            assertEquals(Set.of("removed"), stage.getUntrackedFiles());
+            stage.write();
+            assertFalse(legacy.exists());
+            assertEquals(Map.of("added", blob),
+                new StagingArea(dir).getTrackedFiles());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
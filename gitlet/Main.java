@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.util.List;
+
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Janani Sriram
  */
@@ -17,8 +19,11 @@ public class Main {
             System.out.println("Please enter a command.");
         } else {
             if (args[0].equals("add")) {
-                validateNumArgs(2, args);
-                repo.add(args[1], false);
+                if (args.length < 2) {
+                    validateNumArgs(2, args);
+                } else {
+                    repo.add(List.of(args).subList(1, args.length));
+                }
             } else if (args[0].equals("init")) {
                 validateNumArgs(1, args);
                 repo.init();
@@ -35,8 +40,12 @@ public class Main {
                 validateNumArgs(1, args);
                 repo.globalLog();
             } else if (args[0].equals("find")) {
-                validateNumArgs(2, args);
-                repo.find(args[1]);
+                if (args.length == 3) {
+                    repo.find(args[1], args[2]);
+                } else {
+                    validateNumArgs(2, args);
+                    repo.find(args[1]);
+                }
             } else if (args[0].equals("status")) {
                 validateNumArgs(1, args);
                 repo.status();
@@ -54,11 +63,36 @@ public class Main {
             } else if (args[0].equals("merge")) {
                 validateNumArgs(2, args);
                 repo.merge(args[1]);
+            } else if (args[0].equals("diff")) {
+                repo.diff(List.of(args).subList(1, args.length)
+                    .toArray(new String[0]));
+            } else if (args[0].equals("gc")) {
+                validateNumArgs(1, args);
+                repo.gc();
+            } else if (args[0].equals("migrate")) {
+                validateNumArgs(1, args);
+                repo.migrate();
+            } else if (args[0].equals("daemon")) {
+                if (!validateNumArgs(1, args)) {
+                    return;
+                }
+                if (!Repository.getGitletFolder().exists()) {
+                    System.out.println("Not in an initialized "
+                            + "Gitlet directory.");
+                    return;
+                }
+                if (!new Daemon(Repository.getGitletFolder()).serve()) {
+                    System.out.println("A daemon is already running.");
+                }
             } else {
                 System.out.println("No command with that name exists.");
                 return;
             }
         }
+        if (System.getProperty("gitlet.cacheStats") != null) {
+            System.err.println("cache: " + Repository.getCacheHits()
+                    + " hits, " + Repository.getCacheMisses() + " misses");
+        }
     }
 
     /** Validates number of arguments to gitlet.
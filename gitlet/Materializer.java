@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Applies a set of file writes and deletions to a working tree, all or
+ *  nothing.  Blobs are first copied to temporary files in a scratch
+ *  directory inside .gitlet by a bounded pool of threads, so that the
+ *  per-file system calls of many small files overlap.  Only when every
+ *  copy succeeded are the files to delete or replace moved aside into
+ *  the scratch directory, deepest first, and the new files renamed into
+ *  place, creating directories as needed; if anything fails, the new
+ *  files are removed and the files moved aside are put back, leaving the
+ *  tree as it was.  Failures are reported in path order.
+ *  @author Janani Sriram
+ */
+class Materializer {
+
+    /** Most files copied at once. */
+    static final int THREADS = 8;
+
+    /** Fewest writes worth handing to the pool. */
+    static final int PARALLEL_THRESHOLD = 4;
+
+    /** Name of the scratch directory inside the metadata folder. */
+    static final String SCRATCH_DIR = "materialize";
+
+    /** Pool shared by every update in this process; its threads do not
+     *  keep the JVM alive. */
+    private static ExecutorService _pool;
+
+    /** Store the blobs are read from. */
+    private final ObjectStore _store;
+
+    /** Root of the working tree. */
+    private final File _root;
+
+    /** Directory holding new and displaced files during an update. */
+    private final File _scratch;
+
+    /** Blob to write at each path. */
+    private final TreeMap<String, ObjectId> _writes = new TreeMap<>();
+
+    /** Paths to delete. */
+    private final TreeSet<String> _deletes = new TreeSet<>();
+
+    /** Temporary file holding the new contents of each path written. */
+    private final HashMap<String, File> _new = new HashMap<>();
+
+    /** Where each file moved aside was put, in the order moved. */
+    private final LinkedHashMap<String, File> _old = new LinkedHashMap<>();
+
+    /** An update of the working tree at ROOT from blobs in STORE. */
+    Materializer(ObjectStore store, File root) {
+        _store = store;
+        _root = root;
+        _scratch = Utils.join(root, WorkTree.GITLET_DIR, SCRATCH_DIR);
+    }
+
+    /** Schedules writing blob BLOB at PATH. */
+    void write(String path, ObjectId blob) {
+        _writes.put(path, blob);
+    }
+
+    /** Schedules deleting the file at PATH. */
+    void delete(String path) {
+        _deletes.add(path);
+    }
+
+    /** Returns the scheduled writes, by path. */
+    Map<String, ObjectId> writes() {
+        return _writes;
+    }
+
+    /** Performs the scheduled writes and deletions.  Throws a
+     *  GitletException listing each failed path, in order, if any could
+     *  not be done, in which case the tree is left unchanged. */
+    void run() {
+        TreeMap<String, String> errors = new TreeMap<>();
+        _scratch.mkdirs();
+        try {
+            copyAll(errors);
+            if (errors.isEmpty()) {
+                install(errors);
+            }
+        } finally {
+            for (File tmp : _new.values()) {
+                tmp.delete();
+            }
+            _scratch.delete();
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder report = new StringBuilder(
+                "Could not update the working tree; nothing was changed.");
+            for (Map.Entry<String, String> error : errors.entrySet()) {
+                report.append("\n").append(error.getKey()).append(": ")
+                    .append(error.getValue());
+            }
+            throw Utils.error("%s", report);
+        }
+    }
+
+    /** Copies every scheduled blob to its temporary file, adding any
+     *  failures to ERRORS. */
+    private void copyAll(TreeMap<String, String> errors) {
+        TreeMap<String, Future<?>> pending = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> write : _writes.entrySet()) {
+            File tmp = new File(_scratch, "new-" + _new.size());
+            _new.put(write.getKey(), tmp);
+            Runnable copy = () -> _store.copyTo(write.getValue(), tmp);
+            if (_writes.size() < PARALLEL_THRESHOLD) {
+                try {
+                    copy.run();
+                } catch (RuntimeException excp) {
+                    errors.put(write.getKey(), excp.getMessage());
+                }
+            } else {
+                pending.put(write.getKey(), pool().submit(copy));
+            }
+        }
+        for (Map.Entry<String, Future<?>> copy : pending.entrySet()) {
+            try {
+                copy.getValue().get();
+            } catch (ExecutionException excp) {
+                errors.put(copy.getKey(), excp.getCause().getMessage());
+            } catch (InterruptedException excp) {
+                errors.put(copy.getKey(), "interrupted");
+            }
+        }
+    }
+
+    /** Moves the deleted and replaced files aside and the new ones into
+     *  place, undoing everything and adding the failure to ERRORS if a
+     *  step fails. */
+    private void install(TreeMap<String, String> errors) {
+        List<String> installed = new ArrayList<>();
+        String current = null;
+        try {
+            for (String path : _deletes.descendingSet()) {
+                current = path;
+                File target = new File(_root, path);
+                if (target.isFile()) {
+                    moveAside(path);
+                    prune(target.getParentFile());
+                }
+            }
+            for (String path : _writes.keySet()) {
+                current = path;
+                File target = new File(_root, path);
+                if (target.isDirectory()) {
+                    throw new IOException("a directory is in the way");
+                }
+                if (target.exists()) {
+                    moveAside(path);
+                }
+                target.getParentFile().mkdirs();
+                move(_new.get(path), target);
+                installed.add(path);
+            }
+        } catch (IOException excp) {
+            errors.put(current, String.valueOf(excp.getMessage()));
+            for (String path : installed) {
+                File target = new File(_root, path);
+                target.delete();
+                prune(target.getParentFile());
+            }
+            List<String> moved = new ArrayList<>(_old.keySet());
+            Collections.reverse(moved);
+            for (String path : moved) {
+                File target = new File(_root, path);
+                target.getParentFile().mkdirs();
+                try {
+                    move(_old.get(path), target);
+                } catch (IOException restore) {
+                    errors.put(path, "left in " + _old.get(path));
+                }
+            }
+            return;
+        }
+        for (File old : _old.values()) {
+            old.delete();
+        }
+    }
+
+    /** Moves the file at PATH into the scratch directory. */
+    private void moveAside(String path) throws IOException {
+        File old = new File(_scratch, "old-" + _old.size());
+        move(new File(_root, path), old);
+        _old.put(path, old);
+    }
+
+    /** Renames FROM to TO, replacing TO. */
+    private static void move(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Deletes DIR and its ancestors below the root while they are
+     *  empty directories. */
+    private void prune(File dir) {
+        while (!dir.equals(_root) && dir.isDirectory() && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns the shared pool, creating it on first use. */
+    private static synchronized ExecutorService pool() {
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "gitlet-materializer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _pool;
+    }
+}
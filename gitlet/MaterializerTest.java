@@ -0,0 +1,142 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Tests of applying writes and deletions to a working tree, all or
+ *  nothing.
+ *  @author Janani Sriram
+ */
+public class MaterializerTest {
+
+    /** Returns the UID of a blob holding TEXT, stored in STORE. */
+    static ObjectId blob(ObjectStore store, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ObjectId id = ObjectId.hash(data);
+        store.write(id, ObjectStore.BLOB, data);
+        return id;
+    }
+
+    /** Writes TEXT to PATH under ROOT, creating directories. */
+    static void put(File root, String path, String text) {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, text);
+    }
+
+    /** Returns the contents of PATH under ROOT, or null if it is not a
+     *  file. */
+    static String get(File root, String path) {
+        File file = new File(root, path);
+        return file.isFile() ? Utils.readContentsAsString(file) : null;
+    }
+
+    /** Returns the lines of the message of the failure of M.run(). */
+    static List<String> failure(Materializer m) {
+        try {
+            m.run();
+        } catch (GitletException excp) {
+            return List.of(excp.getMessage().split("\n"));
+        }
+        fail("update succeeded");
+        return null;
+    }
+
+    /** Writes and deletions all take effect, creating and pruning
+     *  directories as needed. */
+    @Test
+    public void appliesChanges() throws IOException {
+        File root = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(new File(root, ".gitlet"));
+            put(root, "a.txt", "old a");
+            put(root, "gone/x.txt", "x");
+            Materializer m = new Materializer(store, root);
+            m.write("a.txt", blob(store, "new a"));
+            m.write("sub/deep/b.txt", blob(store, "b"));
+            m.delete("gone/x.txt");
+            m.run();
+            assertEquals("new a", get(root, "a.txt"));
+            assertEquals("b", get(root, "sub/deep/b.txt"));
+            assertFalse(new File(root, "gone").exists());
+            assertFalse(new File(root, ".gitlet/"
+                + Materializer.SCRATCH_DIR).exists());
+        } finally {
+            ChunkerTest.delete(root);
+        }
+    }
+
+    /** A write that fails partway through installing, because a
+     *  directory is where a file must go, undoes the writes and
+     *  deletions already made, leaving the tree as it was. */
+    @Test
+    public void rollsBackOnInstallFailure() throws IOException {
+        File root = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(new File(root, ".gitlet"));
+            put(root, "a.txt", "old a");
+            put(root, "b.txt", "old b");
+            put(root, "d/x.txt", "old x");
+            put(root, "m/in-the-way/kept.txt", "kept");
+            Materializer m = new Materializer(store, root);
+            m.write("a.txt", blob(store, "new a"));
+            m.write("b.txt", blob(store, "new b"));
+            m.write("c/new.txt", blob(store, "new c"));
+            m.write("m/in-the-way", blob(store, "blocked"));
+            m.write("z.txt", blob(store, "new z"));
+            m.delete("d/x.txt");
+            List<String> report = failure(m);
+            assertEquals(List.of(
+                "Could not update the working tree; nothing was changed.",
+                "m/in-the-way: a directory is in the way"), report);
+            assertEquals("old a", get(root, "a.txt"));
+            assertEquals("old b", get(root, "b.txt"));
+            assertEquals("old x", get(root, "d/x.txt"));
+            assertEquals("kept", get(root, "m/in-the-way/kept.txt"));
+            assertFalse(new File(root, "c").exists());
+            assertFalse(new File(root, "z.txt").exists());
+            assertFalse(new File(root, ".gitlet/"
+                + Materializer.SCRATCH_DIR).exists());
+        } finally {
+            ChunkerTest.delete(root);
+        }
+    }
+
+    /** Blobs that cannot be read are all reported, in path order
+     *  whatever order they were scheduled in, and nothing is
+     *  changed. */
+    @Test
+    public void reportsCopyFailuresInPathOrder() throws IOException {
+        File root = ChunkerTest.tempDir();
+        try {
+            ObjectStore store = new ObjectStore(new File(root, ".gitlet"));
+            put(root, "b.txt", "old b");
+            put(root, "d.txt", "old d");
+            Materializer m = new Materializer(store, root);
+            String[] missing = {"z.txt", "a.txt", "m/q.txt", "c.txt"};
+            for (String path : missing) {
+                m.write(path, ObjectId.hash(path.getBytes(
+                    StandardCharsets.UTF_8)));
+            }
+            m.write("b.txt", blob(store, "new b"));
+            m.delete("d.txt");
+            List<String> report = failure(m);
+            assertEquals(1 + missing.length, report.size());
+            assertTrue(report.get(1).startsWith("a.txt: "));
+            assertTrue(report.get(2).startsWith("c.txt: "));
+            assertTrue(report.get(3).startsWith("m/q.txt: "));
+            assertTrue(report.get(4).startsWith("z.txt: "));
+            assertEquals("old b", get(root, "b.txt"));
+            assertEquals("old d", get(root, "d.txt"));
+            assertFalse(new File(root, "a.txt").exists());
+            assertFalse(new File(root, "m").exists());
+        } finally {
+            ChunkerTest.delete(root);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the best common ancestors of two commits using only the commit
+ *  graph.  Both sides are painted down from their tips in order of
+ *  decreasing generation, following every parent; a commit reached from
+ *  both sides is a common ancestor, and everything below it is marked
+ *  stale.  A commit's place in the queue depends only on its generation
+ *  and time, so a queued commit painted again keeps its place and only
+ *  its flags change; a count of the queued commits not yet stale drops
+ *  as they are marked, and the walk stops as soon as it reaches zero.
+ *  Common ancestors that are themselves ancestors of another result are
+ *  then dropped, leaving every best common ancestor (more than one in
+ *  criss-cross histories).
+ *  @author Janani Sriram
+ */
+class MergeBase {
+
+    /** Reached from the first commit. */
+    private static final int PARENT1 = 1;
+
+    /** Reached from the second commit. */
+    private static final int PARENT2 = 2;
+
+    /** Below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Already recorded as a common ancestor. */
+    private static final int RESULT = 8;
+
+    /** The graph being searched. */
+    private final CommitGraph _graph;
+
+    /** A merge-base engine over GRAPH. */
+    MergeBase(CommitGraph graph) {
+        _graph = graph;
+    }
+
+    /** Returns the positions of the best common ancestors of the commits
+     *  at positions ONE and TWO, highest generation (then latest commit)
+     *  first. */
+    List<Integer> bases(int one, int two) {
+        List<Integer> result = new ArrayList<>();
+        if (one == two) {
+            result.add(one);
+            return result;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(this::compare);
+        HashSet<Integer> queued = new HashSet<>();
+        flags.put(one, PARENT1);
+        flags.put(two, PARENT2);
+        queue.add(one);
+        queue.add(two);
+        queued.add(one);
+        queued.add(two);
+        int active = 2;
+
+        while (active > 0) {
+            int pos = queue.poll();
+            queued.remove(pos);
+            int flag = flags.get(pos);
+            if ((flag & STALE) == 0) {
+                active -= 1;
+            }
+            int paint = flag & (PARENT1 | PARENT2 | STALE);
+            if (paint == (PARENT1 | PARENT2)) {
+                if ((flag & RESULT) == 0) {
+                    flags.put(pos, flag | RESULT);
+                    result.add(pos);
+                }
+                paint |= STALE;
+            }
+            for (int parent : _graph.parents(pos)) {
+                int old = flags.getOrDefault(parent, 0);
+                if ((old & paint) == paint) {
+                    continue;
+                }
+                flags.put(parent, old | paint);
+                if (queued.contains(parent)) {
+                    if ((old & STALE) == 0 && (paint & STALE) != 0) {
+                        active -= 1;
+                    }
+                } else {
+                    queue.add(parent);
+                    queued.add(parent);
+                    if (((old | paint) & STALE) == 0) {
+                        active += 1;
+                    }
+                }
+            }
+        }
+        return reduce(result);
+    }
+
+    /** Returns the ids of the best common ancestors of commits ONE and
+     *  TWO, best first; or none if either commit is missing from the
+     *  graph even after rereading it. */
+    List<ObjectId> bases(ObjectId one, ObjectId two) {
+        List<ObjectId> result = new ArrayList<>();
+        _graph.refresh();
+        int first = _graph.find(one);
+        int second = _graph.find(two);
+        if (first < 0 || second < 0) {
+            return result;
+        }
+        for (int pos : bases(first, second)) {
+            result.add(_graph.id(pos));
+        }
+        return result;
+    }
+
+    /** Returns true iff commit ANCESTOR is reachable from commit
+     *  DESCENDANT (every commit is reachable from itself). */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = _graph.generation(ancestor);
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.add(descendant);
+        while (!work.isEmpty()) {
+            int pos = work.pop();
+            if (pos == ancestor) {
+                return true;
+            }
+            if (!seen.add(pos) || _graph.generation(pos) <= floor) {
+                continue;
+            }
+            for (int parent : _graph.parents(pos)) {
+                work.push(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Returns CANDIDATES without those reachable from another candidate,
+     *  sorted best first. */
+    private List<Integer> reduce(List<Integer> candidates) {
+        List<Integer> result = new ArrayList<>();
+        for (int candidate : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != candidate && isAncestor(candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(candidate);
+            }
+        }
+        result.sort(this::compare);
+        return result;
+    }
+
+    /** Orders positions A and B by decreasing generation, then decreasing
+     *  commit time, then position. */
+    private int compare(int a, int b) {
+        int cmp = Integer.compare(_graph.generation(b), _graph.generation(a));
+        if (cmp == 0) {
+            cmp = Long.compare(_graph.time(b), _graph.time(a));
+        }
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+}
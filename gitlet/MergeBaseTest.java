@@ -0,0 +1,140 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/** Tests of finding best common ancestors on the commit graph.
+ *  @author Janani Sriram
+ */
+public class MergeBaseTest {
+
+    /** Returns the positions of the commits reachable from position POS
+     *  of GRAPH, including POS itself. */
+    static Set<Integer> ancestors(CommitGraph graph, int pos) {
+        Set<Integer> result = new HashSet<>();
+        List<Integer> work = new ArrayList<>(List.of(pos));
+        while (!work.isEmpty()) {
+            int next = work.remove(work.size() - 1);
+            if (result.add(next)) {
+                for (int parent : graph.parents(next)) {
+                    work.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Along a single line of history, the older commit is the base and
+     *  is an ancestor of the newer one but not the reverse. */
+    @Test
+    public void linearHistory() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            Commit root = CommitGraphTest.commit(null, "root", 0);
+            Commit a = CommitGraphTest.commit(null, "a", 10, root.getUID());
+            Commit b = CommitGraphTest.commit(null, "b", 20, a.getUID());
+            CommitGraph graph = new CommitGraph(dir);
+            graph.add(List.of(b, a, root));
+            MergeBase mb = new MergeBase(graph);
+            int pa = graph.find(a.getUID());
+            int pb = graph.find(b.getUID());
+            assertEquals(List.of(pa), mb.bases(pa, pb));
+            assertEquals(List.of(pa), mb.bases(pb, pa));
+            assertEquals(List.of(pb), mb.bases(pb, pb));
+            assertTrue(mb.isAncestor(pa, pb));
+            assertTrue(mb.isAncestor(pb, pb));
+            assertFalse(mb.isAncestor(pb, pa));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** When two branches each merge the other (a criss-cross), both
+     *  branch points are best common ancestors and neither is dropped;
+     *  the later one comes first, and is the one merge uses. */
+    @Test
+    public void crissCrossHasTwoBases() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            Commit root = CommitGraphTest.commit(null, "root", 0);
+            Commit a = CommitGraphTest.commit(null, "a", 10, root.getUID());
+            Commit b = CommitGraphTest.commit(null, "b", 20, root.getUID());
+            Commit m1 = CommitGraphTest.commit(null, "m1", 30,
+                a.getUID(), b.getUID());
+            Commit m2 = CommitGraphTest.commit(null, "m2", 40,
+                b.getUID(), a.getUID());
+            Commit x = CommitGraphTest.commit(null, "x", 50, m1.getUID());
+            Commit y = CommitGraphTest.commit(null, "y", 60, m2.getUID());
+            CommitGraph graph = new CommitGraph(dir);
+            graph.add(List.of(y, x, m2, m1, b, a, root));
+            MergeBase mb = new MergeBase(graph);
+            List<ObjectId> expected = List.of(b.getUID(), a.getUID());
+            assertEquals(expected, mb.bases(x.getUID(), y.getUID()));
+            assertEquals(expected, mb.bases(y.getUID(), x.getUID()));
+            assertEquals(expected, mb.bases(m1.getUID(), m2.getUID()));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** On random histories with many merges, the bases found are exactly
+     *  the common ancestors that are not ancestors of another common
+     *  ancestor. */
+    @Test
+    public void matchesDefinitionOnRandomHistories() throws IOException {
+        Random random = new Random(8);
+        for (int trial = 0; trial < 20; trial += 1) {
+            File dir = ChunkerTest.tempDir();
+            try {
+                List<Commit> commits = new ArrayList<>();
+                commits.add(CommitGraphTest.commit(null, "c0", 0));
+                for (int i = 1; i < 40; i += 1) {
+                    ObjectId first = commits.get(
+                        random.nextInt(commits.size())).getUID();
+                    if (random.nextInt(3) == 0) {
+                        ObjectId second = commits.get(
+                            random.nextInt(commits.size())).getUID();
+                        if (!second.equals(first)) {
+                            commits.add(CommitGraphTest.commit(null,
+                                "c" + i, i, first, second));
+                            continue;
+                        }
+                    }
+                    commits.add(CommitGraphTest.commit(null, "c" + i, i,
+                        first));
+                }
+                List<Commit> newestFirst = new ArrayList<>(commits);
+                Collections.reverse(newestFirst);
+                CommitGraph graph = new CommitGraph(dir);
+                graph.add(newestFirst);
+                MergeBase mb = new MergeBase(graph);
+                for (int pair = 0; pair < 30; pair += 1) {
+                    int one = graph.find(commits.get(
+                        random.nextInt(commits.size())).getUID());
+                    int two = graph.find(commits.get(
+                        random.nextInt(commits.size())).getUID());
+                    Set<Integer> common = ancestors(graph, one);
+                    common.retainAll(ancestors(graph, two));
+                    Set<Integer> best = new HashSet<>(common);
+                    for (int pos : common) {
+                        Set<Integer> below = ancestors(graph, pos);
+                        below.remove(pos);
+                        best.removeAll(below);
+                    }
+                    assertEquals(best, new HashSet<>(mb.bases(one, two)));
+                }
+            } finally {
+                ChunkerTest.delete(dir);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/** An index of commit messages, so that commits can be found by message
+ *  without reading them.  Each distinct message has an entry file named
+ *  by the SHA-1 of the message, holding the message and the ids of the
+ *  commits that have it; an exact lookup reads just that file.  Each word
+ *  of a message (a run of letters and digits, lower-cased) has a posting
+ *  file listing the ids of the entries of the messages containing it,
+ *  which narrows substring searches.  Commits are added by appending to
+ *  these files, and regular-expression searches read the entries, never
+ *  the commits.
+ *
+ *  Files live in messages/entries and messages/words, sharded by the first
+ *  two digits of their names as loose objects are.  An entry is the
+ *  length-prefixed UTF-8 message followed by raw 20-byte commit ids; a
+ *  posting file is a sequence of raw 20-byte entry ids.  The file
+ *  messages/complete is written once the index covers every commit; an
+ *  index without it is rebuilt from the commits.
+ *  @author Janani Sriram
+ */
+class MessageIndex {
+
+    /** Pattern separating the words of a message. */
+    private static final Pattern SEPARATOR =
+        Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Root of the index. */
+    private final File _dir;
+
+    /** Directory of message entries. */
+    private final File _entries;
+
+    /** Directory of word postings. */
+    private final File _words;
+
+    /** Marker written when the index is complete. */
+    private final File _complete;
+
+    /** The message index of the repository whose metadata folder is
+     *  GITLETFOLDER. */
+    MessageIndex(File gitletFolder) {
+        _dir = Utils.join(gitletFolder, "messages");
+        _entries = Utils.join(_dir, "entries");
+        _words = Utils.join(_dir, "words");
+        _complete = Utils.join(_dir, "complete");
+    }
+
+    /** Returns true iff the index is complete. */
+    boolean exists() {
+        return _complete.isFile();
+    }
+
+    /** Adds COMMIT under its message. */
+    void add(Commit commit) {
+        String message = commit.getMessage();
+        ObjectId key = ObjectId.hash(message.getBytes(StandardCharsets.UTF_8));
+        File entry = file(_entries, key);
+        if (entry.isFile()) {
+            append(entry, commit.getUID().toBytes());
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Commit.writeString(out, message);
+            commit.getUID().write(out);
+            out.close();
+            append(entry, bytes.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String word : words(message)) {
+            append(file(_words, ObjectId.hash(
+                word.getBytes(StandardCharsets.UTF_8))), key.toBytes());
+        }
+    }
+
+    /** Rebuilds the index from scratch out of every commit in STORE. */
+    void rebuild(ObjectStore store) {
+        _complete.delete();
+        delete(_dir);
+        for (ObjectId id : store.ids(ObjectStore.COMMIT)) {
+            add(store.readCommit(id));
+        }
+        _dir.mkdirs();
+        Utils.writeContents(_complete, "");
+    }
+
+    /** Returns the ids of the commits whose message is MESSAGE, in
+     *  order. */
+    List<ObjectId> find(String message) {
+        TreeSet<ObjectId> result = new TreeSet<>();
+        readEntry(ObjectId.hash(message.getBytes(StandardCharsets.UTF_8)),
+            message::equals, result);
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, in
+     *  order.  Words of TEXT that are not at its ends are whole words of
+     *  any message containing it, so only messages having all of them
+     *  are read; if there are none, every message is. */
+    List<ObjectId> containing(String text) {
+        String[] parts = SEPARATOR.split(text.toLowerCase(), -1);
+        Set<ObjectId> candidates = null;
+        for (int i = 1; i < parts.length - 1; i += 1) {
+            if (parts[i].isEmpty()) {
+                continue;
+            }
+            Set<ObjectId> having = postings(parts[i]);
+            if (candidates == null) {
+                candidates = having;
+            } else {
+                candidates.retainAll(having);
+            }
+        }
+        Predicate<String> test = message -> message.contains(text);
+        if (candidates == null) {
+            return scan(test);
+        }
+        TreeSet<ObjectId> result = new TreeSet<>();
+        for (ObjectId key : candidates) {
+            readEntry(key, test, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the ids of the commits with a message in which PATTERN
+     *  finds a match, in order. */
+    List<ObjectId> matching(Pattern pattern) {
+        return scan(message -> pattern.matcher(message).find());
+    }
+
+    /** Returns the ids of the commits whose message passes TEST, reading
+     *  every entry. */
+    private List<ObjectId> scan(Predicate<String> test) {
+        TreeSet<ObjectId> result = new TreeSet<>();
+        String[] shards = _entries.list();
+        if (shards != null) {
+            for (String shard : shards) {
+                List<String> names =
+                    Utils.plainFilenamesIn(Utils.join(_entries, shard));
+                if (names == null) {
+                    continue;
+                }
+                for (String name : names) {
+                    ObjectId key = ObjectId.parse(shard + name);
+                    if (key != null) {
+                        readEntry(key, test, result);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Adds to RESULT the commits of entry KEY if it exists and its
+     *  message passes TEST. */
+    private void readEntry(ObjectId key, Predicate<String> test,
+                           Set<ObjectId> result) {
+        File entry = file(_entries, key);
+        if (!entry.isFile()) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(entry));
+        try {
+            if (!test.test(Commit.readString(in))) {
+                return;
+            }
+            while (in.remaining() >= ObjectId.BYTES) {
+                result.add(ObjectId.read(in));
+            }
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("corrupt message index");
+        }
+    }
+
+    /** Returns the ids of the entries whose messages contain WORD. */
+    private Set<ObjectId> postings(String word) {
+        Set<ObjectId> result = new LinkedHashSet<>();
+        File postings = file(_words, ObjectId.hash(
+            word.getBytes(StandardCharsets.UTF_8)));
+        if (postings.isFile()) {
+            ByteBuffer in = ByteBuffer.wrap(Utils.readContents(postings));
+            while (in.remaining() >= ObjectId.BYTES) {
+                result.add(ObjectId.read(in));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the distinct words of MESSAGE, lower-cased. */
+    private static Set<String> words(String message) {
+        Set<String> result = new LinkedHashSet<>(
+            Arrays.asList(SEPARATOR.split(message.toLowerCase())));
+        result.remove("");
+        return result;
+    }
+
+    /** Returns the file for KEY in the sharded directory DIR. */
+    private static File file(File dir, ObjectId key) {
+        String name = key.name();
+        return Utils.join(dir, name.substring(0, ObjectStore.SHARD_DIGITS),
+            name.substring(ObjectStore.SHARD_DIGITS));
+    }
+
+    /** Appends DATA to FILE, creating it and its directory if needed. */
+    private static void append(File file, byte[] data) {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
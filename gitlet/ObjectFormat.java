@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/** On-disk encoding of a stored object, shared by loose objects and pack
+ *  entries.  An encoded object is a header (the magic bytes "GLO", a type
+ *  byte, an encoding byte and the 8-byte uncompressed size) followed by
+ *  the contents, either Deflate-compressed or raw.  Contents that do not
+ *  shrink when a sample is compressed are stored raw.  Files without the
+ *  magic bytes predate this format and are read as raw contents.
+ *  @author Janani Sriram
+ */
+class ObjectFormat {
+
+    /** Size of the header in bytes. */
+    static final int HEADER = 13;
+
+    /** Encoding of contents stored as they are. */
+    static final int RAW = 0;
+
+    /** Encoding of Deflate-compressed contents. */
+    static final int DEFLATED = 1;
+
+    /** Number of leading bytes compressed to judge compressibility. */
+    static final int SAMPLE = 8192;
+
+    /** Objects smaller than this are never compressed. */
+    static final int MIN_DEFLATE = 64;
+
+    /** Magic bytes opening every encoded object. */
+    private static final byte[] MAGIC = {'G', 'L', 'O'};
+
+    /** Returns the header for an object of type TYPE and SIZE bytes stored
+     *  with encoding ENCODING. */
+    static byte[] header(int type, int encoding, long size) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.put(MAGIC).put((byte) type).put((byte) encoding);
+        header.putLong(size);
+        return header.array();
+    }
+
+    /** Returns true iff the first LEN bytes of DATA look worth
+     *  compressing. */
+    static boolean compressible(byte[] data, int len) {
+        if (len < MIN_DEFLATE) {
+            return false;
+        }
+        int sample = Math.min(len, SAMPLE);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data, 0, sample);
+        deflater.finish();
+        byte[] out = new byte[sample];
+        int compressed = 0;
+        while (!deflater.finished() && compressed < sample) {
+            compressed += deflater.deflate(out, 0, out.length);
+        }
+        deflater.end();
+        return compressed < sample * 9 / 10;
+    }
+
+    /** Returns DATA, an object of type TYPE, in encoded form. */
+    static byte[] encode(int type, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (compressible(data, data.length)) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            deflater.end();
+            if (out.size() < data.length) {
+                byte[] body = out.toByteArray();
+                out.reset();
+                out.writeBytes(header(type, DEFLATED, data.length));
+                out.writeBytes(body);
+                return out.toByteArray();
+            }
+            out.reset();
+        }
+        out.writeBytes(header(type, RAW, data.length));
+        out.writeBytes(data);
+        return out.toByteArray();
+    }
+
+    /** Returns true iff STORED begins with an object header. */
+    static boolean hasHeader(byte[] stored) {
+        return stored.length >= HEADER && stored[0] == MAGIC[0]
+                && stored[1] == MAGIC[1] && stored[2] == MAGIC[2];
+    }
+
+    /** Returns the type recorded in the header at the start of STORED, or
+     *  -1 if STORED has no header. */
+    static int type(byte[] stored) {
+        return hasHeader(stored) ? stored[3] : -1;
+    }
+
+    /** Returns the contents of the encoded object STORED. */
+    static byte[] decode(byte[] stored) {
+        try (InputStream in = open(new ByteArrayInputStream(stored))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of the encoded object read from
+     *  STORED, inflating as it is read.  Closing the result closes
+     *  STORED. */
+    static InputStream open(InputStream stored) throws IOException {
+        InputStream in = stored.markSupported() ? stored
+                : new BufferedInputStream(stored, 1 << 16);
+        in.mark(HEADER);
+        byte[] header = in.readNBytes(HEADER);
+        if (!hasHeader(header)) {
+            in.reset();
+            return in;
+        }
+        if (header[4] == DEFLATED) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+}
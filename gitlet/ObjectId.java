@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/** The name of an object: the 20 bytes of a SHA-1 hash, held as two
+ *  longs and an int rather than as a 40-digit string.  Ids are compared
+ *  and hashed a word at a time, read and written as raw bytes, and
+ *  converted to hexadecimal only when printed or used as a file name.
+ *  Ordering is that of the raw bytes taken as unsigned, which is also
+ *  the order of the hexadecimal names.
+ *  @author Janani Sriram
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Length of an id in bytes. */
+    static final int BYTES = 20;
+
+    /** Length of an id as a hexadecimal numeral. */
+    static final int HEX_LENGTH = 2 * BYTES;
+
+    /** Lower-case hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+
+    /** Bytes 0-7 of the id. */
+    private final long _w1;
+
+    /** Bytes 8-15 of the id. */
+    private final long _w2;
+
+    /** Bytes 16-19 of the id. */
+    private final int _w3;
+
+    /** The id whose bytes, in big-endian order, are W1, W2 and W3. */
+    private ObjectId(long w1, long w2, int w3) {
+        _w1 = w1;
+        _w2 = w2;
+        _w3 = w3;
+    }
+
+    /** Returns the id held in the BYTES bytes of RAW from OFFSET. */
+    static ObjectId fromBytes(byte[] raw, int offset) {
+        return read(ByteBuffer.wrap(raw, offset, BYTES));
+    }
+
+    /** Returns the id whose raw bytes are RAW. */
+    static ObjectId fromBytes(byte[] raw) {
+        return fromBytes(raw, 0);
+    }
+
+    /** Returns the id read from the next BYTES bytes of IN. */
+    static ObjectId read(ByteBuffer in) {
+        long w1 = in.getLong();
+        long w2 = in.getLong();
+        return new ObjectId(w1, w2, in.getInt());
+    }
+
+    /** Returns the id named by the 40-digit hexadecimal numeral HEX, or
+     *  null if HEX is null or not such a numeral. */
+    static ObjectId parse(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            return null;
+        }
+        long w1 = 0;
+        long w2 = 0;
+        int w3 = 0;
+        for (int i = 0; i < HEX_LENGTH; i += 1) {
+            int digit = hexDigit(hex.charAt(i));
+            if (digit < 0) {
+                return null;
+            }
+            if (i < 16) {
+                w1 = (w1 << 4) | digit;
+            } else if (i < 32) {
+                w2 = (w2 << 4) | digit;
+            } else {
+                w3 = (w3 << 4) | digit;
+            }
+        }
+        return new ObjectId(w1, w2, w3);
+    }
+
+    /** Returns the value of the ASCII hexadecimal digit C, in either
+     *  case, or -1 if C is not one.  Unlike Character.digit, this
+     *  rejects the other Unicode digits and letters. */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /** Returns the id of DATA: its SHA-1 hash. */
+    static ObjectId hash(byte[] data) {
+        MessageDigest md = Utils.sha1Digest();
+        md.update(data);
+        return of(md);
+    }
+
+    /** Returns the id holding the digest completed by MD. */
+    static ObjectId of(MessageDigest md) {
+        return fromBytes(md.digest());
+    }
+
+    /** Writes the raw bytes of this id to OUT. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(_w1);
+        out.writeLong(_w2);
+        out.writeInt(_w3);
+    }
+
+    /** Returns the raw bytes of this id. */
+    byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(_w1).putLong(_w2)
+            .putInt(_w3).array();
+    }
+
+    /** Returns the first byte of this id, from 0 to 255. */
+    int firstByte() {
+        return (int) (_w1 >>> 56);
+    }
+
+    /** Returns hexadecimal digit I of this id, from 0 to 15. */
+    private int nibble(int i) {
+        if (i < 16) {
+            return (int) (_w1 >>> (60 - 4 * i)) & 0xf;
+        } else if (i < 32) {
+            return (int) (_w2 >>> (60 - 4 * (i - 16))) & 0xf;
+        }
+        return (_w3 >>> (28 - 4 * (i - 32))) & 0xf;
+    }
+
+    /** Returns true iff the name of this id starts with PREFIX, in either
+     *  case, without building the name. */
+    boolean startsWith(String prefix) {
+        if (prefix.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i += 1) {
+            if (hexDigit(prefix.charAt(i)) != nibble(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the first LENGTH digits of the name of this id. */
+    String abbreviate(int length) {
+        char[] result = new char[Math.min(length, HEX_LENGTH)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = HEX_DIGITS[nibble(i)];
+        }
+        return new String(result);
+    }
+
+    /** Returns the name of this id: 40 lower-case hexadecimal digits. */
+    String name() {
+        return abbreviate(HEX_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(_w1, other._w1);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(_w2, other._w2);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(_w3, other._w3);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w1 == other._w1 && _w2 == other._w2 && _w3 == other._w3;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w1 >>> 32);
+    }
+}
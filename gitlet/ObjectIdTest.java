@@ -0,0 +1,129 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of object ids: names, raw bytes, ordering and prefixes.
+ *  @author Janani Sriram
+ */
+public class ObjectIdTest {
+
+    /** Returns the id named by HEX, which must be a valid name. */
+    static ObjectId id(String hex) {
+        ObjectId result = ObjectId.parse(hex);
+        assertNotNull(result);
+        return result;
+    }
+
+    /** Returns a 40-digit name of zeros with DIGIT at position POS. */
+    static String single(int pos, char digit) {
+        char[] name = new char[ObjectId.HEX_LENGTH];
+        Arrays.fill(name, '0');
+        name[pos] = digit;
+        return new String(name);
+    }
+
+    /** Names and raw bytes read back as written, in lower case whatever
+     *  case was parsed. */
+    @Test
+    public void roundTrips() {
+        ObjectId hashed = ObjectId.hash(
+            "wug".getBytes(StandardCharsets.UTF_8));
+        assertEquals(hashed, ObjectId.parse(hashed.name()));
+        assertEquals(hashed, ObjectId.fromBytes(hashed.toBytes()));
+        assertEquals(ObjectId.HEX_LENGTH, hashed.name().length());
+
+        String mixed = "0123456789ABCDEFabcdef0123456789aBcDeF99";
+        ObjectId parsed = id(mixed);
+        assertEquals(mixed.toLowerCase(), parsed.name());
+        assertEquals(mixed.toLowerCase(), parsed.toString());
+        assertEquals("0123456", parsed.abbreviate(7));
+        assertEquals(0x01, parsed.firstByte());
+        assertEquals(0xf0, id(single(0, 'f')).firstByte());
+        assertEquals(0x0f, id(single(1, 'f')).firstByte());
+        for (int i = 0; i < ObjectId.HEX_LENGTH; i += 1) {
+            String name = single(i, 'f');
+            assertEquals(name, id(name).name());
+            assertEquals(id(name), ObjectId.fromBytes(id(name).toBytes()));
+        }
+    }
+
+    /** Only 40 ASCII hexadecimal digits name an id. */
+    @Test
+    public void rejectsMalformedNames() {
+        String good = single(0, 'a');
+        assertNull(ObjectId.parse(null));
+        assertNull(ObjectId.parse(""));
+        assertNull(ObjectId.parse(good.substring(1)));
+        assertNull(ObjectId.parse(good + "0"));
+        assertNull(ObjectId.parse(single(5, 'g')));
+        assertNull(ObjectId.parse(single(5, ' ')));
+        assertNull(ObjectId.parse(single(39, '\u0660')));
+        assertNull(ObjectId.parse(single(20, '\uff21')));
+        assertNull(ObjectId.parse(single(0, '\uff11')));
+    }
+
+    /** Ids are ordered as their names are, with every byte taken as
+     *  unsigned, across all three words. */
+    @Test
+    public void ordersUnsigned() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < ObjectId.HEX_LENGTH; i += 1) {
+            names.add(single(i, '1'));
+            names.add(single(i, '7'));
+            names.add(single(i, '8'));
+            names.add(single(i, 'f'));
+        }
+        Random random = new Random(16);
+        for (int i = 0; i < 200; i += 1) {
+            byte[] raw = new byte[ObjectId.BYTES];
+            random.nextBytes(raw);
+            names.add(ObjectId.fromBytes(raw).name());
+        }
+        List<ObjectId> ids = new ArrayList<>();
+        for (String name : names) {
+            ids.add(id(name));
+        }
+        Collections.shuffle(ids, random);
+        Collections.sort(ids);
+        Collections.sort(names);
+        for (int i = 0; i < names.size(); i += 1) {
+            assertEquals(names.get(i), ids.get(i).name());
+        }
+
+        ObjectId top1 = id(single(0, '8'));
+        ObjectId top2 = id(single(16, '8'));
+        ObjectId top3 = id(single(32, '8'));
+        ObjectId low3 = id(single(39, '1'));
+        assertTrue(top1.compareTo(top2) > 0);
+        assertTrue(top2.compareTo(top3) > 0);
+        assertTrue(top3.compareTo(low3) > 0);
+        assertTrue(low3.compareTo(top3) < 0);
+        assertEquals(0, top3.compareTo(id(single(32, '8'))));
+    }
+
+    /** A prefix of the name, in either case, matches; anything else,
+     *  including a longer string or non-ASCII digits, does not. */
+    @Test
+    public void matchesPrefixes() {
+        ObjectId id = id("a1b2c3d4e5f60718293a4b5c6d7e8f9012345678");
+        assertTrue(id.startsWith(""));
+        assertTrue(id.startsWith("a"));
+        assertTrue(id.startsWith("A1B2C3"));
+        assertTrue(id.startsWith("a1b2c3d4e5f60718293a"));
+        assertTrue(id.startsWith(id.name()));
+        assertFalse(id.startsWith("a1b3"));
+        assertFalse(id.startsWith("b"));
+        assertFalse(id.startsWith("a1b2c3d4e5f60718293a4b5c6d7e8f9012345670"));
+        assertFalse(id.startsWith(id.name() + "0"));
+        assertFalse(id.startsWith("a\uff11"));
+        assertFalse(id.startsWith("a1b2c3d4e5f6071829\u0663a"));
+    }
+}
@@ -0,0 +1,672 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.util.zip.DeflaterOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The object database of a repository: commits, trees and blobs, either
+ *  loose (one file per object under commits/, and blobs/ for the rest) or
+ *  consolidated into packs under packs/.  Loose objects are sharded by
+ *  the first two digits of their names, as commits/ab/cdef....txt, so no
+ *  directory grows beyond a few thousand entries; repositories created
+ *  before sharding keep every loose object directly in commits/ and
+ *  blobs/ until shard() moves them, and are recognized by the absence of
+ *  the SHARDED_MARKER file.  Every read goes through one
+ *  lookup path that tries the loose directories first, so a rewritten
+ *  object shadows a packed copy, and then the packs.  Objects are stored
+ *  in the compressed form described by ObjectFormat.
+ *
+ *  Blobs of at least CHUNK_THRESHOLD bytes are split by Chunker into
+ *  content-addressed chunks, each stored as a blob of its own, and the
+ *  blob's id names a chunk-list object holding the 20-byte ids of its
+ *  chunks in order.  Chunks are shared by every file and version that
+ *  contains them.
+ *
+ *  When loose objects are packed, each version of a path may be stored as
+ *  a DELTA against the next newer version (see Delta), with chains at most
+ *  MAX_DELTA_DEPTH long.  A delta's contents are the base's 20-byte id,
+ *  the delta's depth and the instructions.  Rebuilt bases are kept in a
+ *  small cache so that walking a chain does not rebuild it repeatedly.
+ *  @author Janani Sriram
+ */
+class ObjectStore {
+
+    /** Type code of commit objects. */
+    static final int COMMIT = 1;
+
+    /** Type code of blob objects. */
+    static final int BLOB = 2;
+
+    /** Type code of chunk-list objects standing for large blobs. */
+    static final int CHUNKED = 3;
+
+    /** Type code of blobs stored as deltas; these occur only in packs. */
+    static final int DELTA = 4;
+
+    /** Type code of tree objects, one per committed directory. */
+    static final int TREE = 5;
+
+    /** Longest chain of deltas that must be applied to read an object. */
+    static final int MAX_DELTA_DEPTH = 10;
+
+    /** Number of rebuilt delta bases kept in memory. */
+    static final int BASE_CACHE_SIZE = 16;
+
+    /** Blobs at least this large are stored as chunks. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** Size of the buffer used to stream files into the store. */
+    static final int BUFFER = 1 << 16;
+
+    /** Name of the file, in the metadata folder, whose presence means
+     *  loose objects are sharded. */
+    static final String SHARDED_MARKER = "sharded";
+
+    /** Number of leading digits of an object's name naming its shard. */
+    static final int SHARD_DIGITS = 2;
+
+    /** Loose commit directory. */
+    private final File _commits;
+
+    /** Loose blob directory. */
+    private final File _blobs;
+
+    /** Pack directory. */
+    private final File _packDir;
+
+    /** File marking that loose objects are sharded. */
+    private final File _marker;
+
+    /** True iff loose objects are sharded. */
+    private boolean _sharded;
+
+    /** Open packs, loaded on first use. */
+    private List<PackFile> _packs;
+
+    /** The transaction objects are written in, or null to write them
+     *  directly. */
+    private Transaction _txn;
+
+    /** Listing of the pack directory when _packs was filled. */
+    private List<String> _packNames;
+
+    /** Recently used delta bases, least recently used first. */
+    private final LinkedHashMap<ObjectId, byte[]> _bases =
+        new LinkedHashMap<>(BASE_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<ObjectId, byte[]> eldest) {
+                return size() > BASE_CACHE_SIZE;
+            }
+        };
+
+    /** An object store rooted at the metadata folder GITLETFOLDER. */
+    ObjectStore(File gitletFolder) {
+        _commits = Utils.join(gitletFolder, "commits");
+        _blobs = Utils.join(gitletFolder, "blobs");
+        _packDir = Utils.join(gitletFolder, "packs");
+        _marker = Utils.join(gitletFolder, SHARDED_MARKER);
+        _sharded = _marker.exists();
+    }
+
+    /** Forgets the open packs if another process has added or removed
+     *  any since they were mapped. */
+    synchronized void refresh() {
+        _sharded = _marker.exists();
+        if (_packs != null
+                && !packDirListing().equals(_packNames)) {
+            _packs = null;
+        }
+    }
+
+    /** Returns the names of the files in the pack directory. */
+    private List<String> packDirListing() {
+        List<String> names = Utils.plainFilenamesIn(_packDir);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    /** Returns the open packs, mapping them if needed.  Synchronized so
+     *  that objects can be read from several threads at once. */
+    private synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = packDirListing();
+            _packNames = names;
+            for (String name : names) {
+                if (name.endsWith(".pack")) {
+                    String base = name.substring(0, name.length() - 5);
+                    File index = Utils.join(_packDir, base + ".idx");
+                    if (index.isFile()) {
+                        _packs.add(new PackFile(
+                                Utils.join(_packDir, name), index));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Writes objects into TXN until end() is called: each is staged in
+     *  a temporary file and made visible only when TXN commits, and reads
+     *  see it in the meantime. */
+    synchronized void begin(Transaction txn) {
+        _txn = txn;
+    }
+
+    /** Stops writing objects into the current transaction. */
+    synchronized void end() {
+        _txn = null;
+    }
+
+    /** Adds the loose file of object ID, and those of its chunks if it is
+     *  chunked, to the files the current transaction flushes, so that a
+     *  ref written in it never names an object still only in the page
+     *  cache.  Packed objects are already durable.  Only the header of
+     *  an object is read to learn its type; only a chunk list is read
+     *  whole. */
+    void sync(ObjectId id) {
+        File loose = findLoose(id);
+        if (_txn == null || loose == null) {
+            return;
+        }
+        _txn.sync(loose);
+        if (storedType(id) == CHUNKED) {
+            byte[] list = ObjectFormat.decode(Utils.readContents(loose));
+            for (int i = 0; i < list.length; i += ObjectId.BYTES) {
+                sync(ObjectId.fromBytes(list, i));
+            }
+        }
+    }
+
+    /** Returns the loose file for object ID of type TYPE. */
+    private File looseFile(ObjectId id, int type) {
+        File dir = type == COMMIT ? _commits : _blobs;
+        String name = id.name();
+        if (!_sharded) {
+            return Utils.join(dir, name + ".txt");
+        }
+        return Utils.join(dir, name.substring(0, SHARD_DIGITS),
+                name.substring(SHARD_DIGITS) + ".txt");
+    }
+
+    /** Returns the ids of the loose objects of type TYPE, which is COMMIT
+     *  or BLOB (covering every other type), in order. */
+    private List<ObjectId> looseIds(int type) {
+        File dir = type == COMMIT ? _commits : _blobs;
+        List<ObjectId> result = new ArrayList<>();
+        if (!_sharded) {
+            addLooseIds(dir, "", result);
+            return result;
+        }
+        String[] shards = dir.list();
+        if (shards != null) {
+            Arrays.sort(shards);
+            for (String shard : shards) {
+                if (shard.length() == SHARD_DIGITS) {
+                    addLooseIds(Utils.join(dir, shard), shard, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Adds to RESULT the ids of the loose objects in DIR, whose file
+     *  names are their names with the PREFIX left out. */
+    private static void addLooseIds(File dir, String prefix,
+                                    List<ObjectId> result) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            ObjectId id = name.endsWith(".txt") ? ObjectId.parse(
+                    prefix + name.substring(0, name.length() - 4)) : null;
+            if (id != null) {
+                result.add(id);
+            }
+        }
+    }
+
+    /** Moves every loose object of a store that is not yet sharded into
+     *  its shard directory, then marks the store sharded.  Each object is
+     *  renamed atomically; if this is interrupted, running it again
+     *  finishes the job. */
+    synchronized void shard() {
+        for (int type = COMMIT; type <= BLOB; type += 1) {
+            File dir = type == COMMIT ? _commits : _blobs;
+            dir.mkdirs();
+            List<ObjectId> flat = new ArrayList<>();
+            addLooseIds(dir, "", flat);
+            for (ObjectId id : flat) {
+                String name = id.name();
+                File shard = Utils.join(dir, name.substring(0, SHARD_DIGITS));
+                shard.mkdirs();
+                try {
+                    Files.move(Utils.join(dir, name + ".txt").toPath(),
+                        Utils.join(shard, name.substring(SHARD_DIGITS)
+                            + ".txt").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        Utils.writeContents(_marker, "");
+        _sharded = true;
+    }
+
+    /** Deletes the loose file of object ID, of type TYPE, if there is
+     *  one. */
+    synchronized void deleteLoose(ObjectId id, int type) {
+        looseFile(id, type).delete();
+    }
+
+    /** Returns true iff object ID exists, packed or loose. */
+    boolean contains(ObjectId id) {
+        if (id == null) {
+            return false;
+        }
+        if (findLoose(id) != null) {
+            return true;
+        }
+        byte[] raw = id.toBytes();
+        for (PackFile pack : packs()) {
+            if (pack.find(raw) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of object ID.  Throws IllegalArgumentException
+     *  if there is no such object. */
+    byte[] read(ObjectId id) {
+        return read(id, true);
+    }
+
+    /** Returns the contents of object ID, or null if it does not exist and
+     *  REQUIRED is false. */
+    private byte[] read(ObjectId id, boolean required) {
+        byte[] stored = readStored(id);
+        if (stored == null) {
+            if (required) {
+                throw new IllegalArgumentException("no object " + id);
+            }
+            return null;
+        }
+        if (ObjectFormat.type(stored) == DELTA) {
+            return applyDelta(ObjectFormat.decode(stored));
+        }
+        if (ObjectFormat.type(stored) == CHUNKED) {
+            try (InputStream in = open(id)) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return ObjectFormat.decode(stored);
+    }
+
+    /** Returns the object described by the delta contents DELTA, reading
+     *  its base through the base cache. */
+    private byte[] applyDelta(byte[] delta) {
+        ObjectId baseId = ObjectId.fromBytes(delta, 0);
+        byte[] base;
+        synchronized (_bases) {
+            base = _bases.get(baseId);
+        }
+        if (base == null) {
+            base = read(baseId);
+            synchronized (_bases) {
+                _bases.put(baseId, base);
+            }
+        }
+        return Delta.apply(base, delta, PackFile.ID_BYTES + 1);
+    }
+
+    /** Returns the number of deltas applied to read object ID, which
+     *  must exist. */
+    private int deltaDepth(ObjectId id) {
+        byte[] stored = readStored(id);
+        if (ObjectFormat.type(stored) != DELTA) {
+            return 0;
+        }
+        return ObjectFormat.decode(stored)[PackFile.ID_BYTES];
+    }
+
+    /** Returns object ID in its stored (encoded) form, or null if there is
+     *  no such object. */
+    private byte[] readStored(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        File loose = findLoose(id);
+        if (loose != null) {
+            return Utils.readContents(loose);
+        }
+        byte[] raw = id.toBytes();
+        for (PackFile pack : packs()) {
+            int pos = pack.find(raw);
+            if (pos >= 0) {
+                return pack.readAt(pos);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the loose file holding object ID, or null if it is not
+     *  stored loose. */
+    private File findLoose(ObjectId id) {
+        for (int type = COMMIT; type <= BLOB; type += 1) {
+            File loose = looseFile(id, type);
+            if (_txn != null && _txn.pending(loose) != null) {
+                return _txn.pending(loose);
+            }
+            if (loose.isFile()) {
+                return loose;
+            }
+        }
+        return null;
+    }
+
+    /** Returns a stream over the contents of object ID, inflated as it is
+     *  read.  Throws IllegalArgumentException if there is no such
+     *  object. */
+    InputStream open(ObjectId id) {
+        try {
+            InputStream in = new BufferedInputStream(openStored(id), BUFFER);
+            in.mark(ObjectFormat.HEADER);
+            byte[] header = in.readNBytes(ObjectFormat.HEADER);
+            in.reset();
+            if (ObjectFormat.type(header) == DELTA) {
+                in.close();
+                return new ByteArrayInputStream(read(id));
+            }
+            if (ObjectFormat.type(header) != CHUNKED) {
+                return ObjectFormat.open(in);
+            }
+            byte[] list;
+            try (InputStream listIn = ObjectFormat.open(in)) {
+                list = listIn.readAllBytes();
+            }
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                private int _next = 0;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return _next < list.length;
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    ObjectId chunk = ObjectId.fromBytes(list, _next);
+                    _next += PackFile.ID_BYTES;
+                    return open(chunk);
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the type in the header of object ID, reading nothing
+     *  past it, or -1 if the object has no header. */
+    private int storedType(ObjectId id) {
+        try (InputStream in = openStored(id)) {
+            return ObjectFormat.type(in.readNBytes(ObjectFormat.HEADER));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over object ID in its stored (encoded) form.
+     *  Throws IllegalArgumentException if there is no such object. */
+    private InputStream openStored(ObjectId id) throws IOException {
+        if (id != null) {
+            File loose = findLoose(id);
+            if (loose != null) {
+                return new FileInputStream(loose);
+            }
+            byte[] raw = id.toBytes();
+            for (PackFile pack : packs()) {
+                int pos = pack.find(raw);
+                if (pos >= 0) {
+                    return pack.streamAt(pos);
+                }
+            }
+        }
+        throw new IllegalArgumentException("no object " + id);
+    }
+
+    /** Writes the contents of object ID to DEST, creating or overwriting
+     *  it and creating any missing parent directories, without holding
+     *  the whole object in memory. */
+    void copyTo(ObjectId id, File dest) {
+        dest.getParentFile().mkdirs();
+        try (InputStream in = open(id)) {
+            Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores DATA as the loose object ID of type TYPE, replacing any
+     *  loose copy already there.  Inside a transaction, the object is
+     *  staged there instead, once however often it is written. */
+    void write(ObjectId id, int type, byte[] data) {
+        File dest = looseFile(id, type);
+        if (_txn != null) {
+            if (_txn.pending(dest) == null) {
+                _txn.writeObject(dest, ObjectFormat.encode(type, data));
+            }
+            return;
+        }
+        File tmp = Transaction.tempFile(dest.getParentFile());
+        try {
+            Files.write(tmp.toPath(), ObjectFormat.encode(type, data));
+            Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the id FILE would have as a blob, without storing it. */
+    ObjectId hashFile(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        byte[] buf = new byte[BUFFER];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ObjectId.of(md);
+    }
+
+    /** Hashes FILE and stores it as a blob in a single pass through one
+     *  bounded buffer, so files larger than the heap can be added.  The
+     *  object is written to a temporary file while it is hashed and
+     *  discarded if the store already holds it.  Returns the blob's id.
+     *  Several files may be inserted at once from different threads. */
+    ObjectId insertFile(File file) {
+        if (file.length() >= CHUNK_THRESHOLD) {
+            return insertChunked(file);
+        }
+        File tmp = Transaction.tempFile(_blobs);
+        MessageDigest md = Utils.sha1Digest();
+        byte[] buf = new byte[BUFFER];
+        long expected = file.length();
+        long size = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n = in.readNBytes(buf, 0, buf.length);
+            boolean deflate = ObjectFormat.compressible(buf, n);
+            try (OutputStream raw = new BufferedOutputStream(
+                    new FileOutputStream(tmp), BUFFER)) {
+                raw.write(ObjectFormat.header(BLOB, deflate
+                        ? ObjectFormat.DEFLATED : ObjectFormat.RAW, expected));
+                OutputStream out = deflate
+                        ? new DeflaterOutputStream(raw) : raw;
+                while (n > 0) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    size += n;
+                    n = in.read(buf);
+                }
+                out.close();
+            }
+            if (size != expected) {
+                try (RandomAccessFile patch = new RandomAccessFile(tmp, "rw")) {
+                    patch.seek(ObjectFormat.HEADER - 8);
+                    patch.writeLong(size);
+                }
+            }
+            ObjectId id = ObjectId.of(md);
+            if (contains(id)) {
+                tmp.delete();
+            } else {
+                looseFile(id, BLOB).getParentFile().mkdirs();
+                Files.move(tmp.toPath(), looseFile(id, BLOB).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return id;
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores FILE as a chunked blob in a single pass, writing only the
+     *  chunks the store does not already hold.  Returns the blob's id,
+     *  the SHA-1 of the whole file as for any other blob. */
+    private ObjectId insertChunked(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        try (InputStream in = new FileInputStream(file)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                md.update(chunk);
+                ObjectId chunkId = ObjectId.hash(chunk);
+                if (!contains(chunkId)) {
+                    write(chunkId, BLOB, chunk);
+                }
+                list.write(chunkId.toBytes());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectId id = ObjectId.of(md);
+        if (!contains(id)) {
+            write(id, CHUNKED, list.toByteArray());
+        }
+        return id;
+    }
+
+    /** Returns the commit with id ID.  Throws IllegalArgumentException if
+     *  there is no such commit. */
+    Commit readCommit(ObjectId id) {
+        return Commit.decode(id, read(id));
+    }
+
+    /** Returns the ids of all objects of type TYPE in sorted order. */
+    List<ObjectId> ids(int type) {
+        TreeSet<ObjectId> result = new TreeSet<>();
+        for (PackFile pack : packs()) {
+            result.addAll(pack.ids(type));
+        }
+        result.addAll(looseIds(type));
+        return new ArrayList<>(result);
+    }
+
+    /** Moves every loose object into a new pack.  Each list in VERSIONS
+     *  holds the blob ids of one path, newest first; a loose blob in such a
+     *  list is stored as a delta against the version before it when that
+     *  saves space and keeps the chain within MAX_DELTA_DEPTH. */
+    void repack(List<List<ObjectId>> versions) {
+        HashMap<ObjectId, byte[]> deltas = new HashMap<>();
+        HashMap<ObjectId, Integer> depths = new HashMap<>();
+        for (List<ObjectId> path : versions) {
+            for (int i = 1; i < path.size(); i += 1) {
+                ObjectId id = path.get(i);
+                ObjectId baseId = path.get(i - 1);
+                if (depths.containsKey(id) || findLoose(id) == null
+                        || !contains(baseId)) {
+                    continue;
+                }
+                depths.put(id, 0);
+                if (!depths.containsKey(baseId)) {
+                    depths.put(baseId, deltaDepth(baseId));
+                }
+                int depth = depths.get(baseId) + 1;
+                if (depth > MAX_DELTA_DEPTH || storedType(id) == CHUNKED
+                        || storedType(baseId) == CHUNKED) {
+                    continue;
+                }
+                byte[] target = ObjectFormat.decode(
+                        Utils.readContents(findLoose(id)));
+                byte[] delta = Delta.create(read(baseId), target);
+                if (delta.length < target.length / 2) {
+                    ByteArrayOutputStream contents =
+                        new ByteArrayOutputStream();
+                    contents.writeBytes(baseId.toBytes());
+                    contents.write(depth);
+                    contents.writeBytes(delta);
+                    deltas.put(id, contents.toByteArray());
+                    depths.put(id, depth);
+                }
+            }
+        }
+
+        PackWriter writer = new PackWriter(_packDir);
+        List<File> packed = new ArrayList<>();
+        for (int type = COMMIT; type <= BLOB; type += 1) {
+            for (ObjectId id : looseIds(type)) {
+                File loose = looseFile(id, type);
+                byte[] stored = Utils.readContents(loose);
+                byte[] delta = deltas.get(id);
+                if (delta != null) {
+                    stored = ObjectFormat.encode(DELTA, delta);
+                } else if (!ObjectFormat.hasHeader(stored)) {
+                    stored = ObjectFormat.encode(type, stored);
+                }
+                writer.add(id.name(), ObjectFormat.type(stored), stored);
+                packed.add(loose);
+            }
+        }
+        if (writer.finish() != null) {
+            for (File loose : packed) {
+                loose.delete();
+                if (_sharded) {
+                    loose.getParentFile().delete();
+                }
+            }
+        }
+        _packs = null;
+        _bases.clear();
+    }
+}
@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A read-only view of one pack of objects and its sorted offset index,
+ *  both memory-mapped.
+ *
+ *  A pack file holds a header (magic, version, object count) followed by
+ *  its entries, each a type byte, a 4-byte payload length and the payload,
+ *  which is the object in the form described by ObjectFormat.
+ *  The index file holds a header, a 256-entry fan-out table whose I-th
+ *  entry counts the ids whose first byte is at most I, the sorted 20-byte
+ *  ids, and the offset of each id's entry in the pack.
+ *  @author Janani Sriram
+ */
+class PackFile {
+
+    /** Magic number opening every pack file ("GPAK"). */
+    static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number opening every pack index file ("GIDX"). */
+    static final int INDEX_MAGIC = 0x47494458;
+
+    /** Current pack format version. */
+    static final int VERSION = 1;
+
+    /** Size of the pack header in bytes. */
+    static final int PACK_HEADER = 12;
+
+    /** Size of the index header in bytes, fan-out table included. */
+    static final int INDEX_HEADER = 12 + 256 * 4;
+
+    /** Length of a raw object id in bytes. */
+    static final int ID_BYTES = 20;
+
+    /** The mapped pack. */
+    private final MappedByteBuffer _pack;
+
+    /** The mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** Number of objects in this pack. */
+    private final int _count;
+
+    /** Opens the pack PACK whose index is INDEX. */
+    PackFile(File pack, File index) {
+        _pack = map(pack);
+        _index = map(index);
+        if (_pack.getInt(0) != PACK_MAGIC
+                || _index.getInt(0) != INDEX_MAGIC
+                || _index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt pack " + pack);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** Returns FILE mapped read-only. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the index position of the object with raw id ID, or -1 if
+     *  this pack does not hold it. */
+    int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the I-th entry of the fan-out table. */
+    private int fanout(int i) {
+        return _index.getInt(12 + 4 * i);
+    }
+
+    /** Compares the id at index position POS with ID. */
+    private int compareId(int pos, byte[] id) {
+        int base = INDEX_HEADER + pos * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int cmp = Integer.compare(_index.get(base + i) & 0xff,
+                    id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the id at index position POS. */
+    ObjectId idAt(int pos) {
+        return ObjectId.read(
+            _index.duplicate().position(INDEX_HEADER + pos * ID_BYTES));
+    }
+
+    /** Returns the offset in the pack of the entry at index position POS. */
+    private int offsetAt(int pos) {
+        return _index.getInt(INDEX_HEADER + _count * ID_BYTES + 4 * pos);
+    }
+
+    /** Returns the type of the object at index position POS. */
+    int typeAt(int pos) {
+        return _pack.get(offsetAt(pos));
+    }
+
+    /** Returns the payload of the object at index position POS. */
+    byte[] readAt(int pos) {
+        int offset = offsetAt(pos);
+        byte[] result = new byte[_pack.getInt(offset + 1)];
+        _pack.get(offset + 5, result);
+        return result;
+    }
+
+    /** Returns a stream over the payload of the object at index position
+     *  POS, read straight from the mapping. */
+    InputStream streamAt(int pos) {
+        int offset = offsetAt(pos);
+        ByteBuffer slice = _pack.slice(offset + 5, _pack.getInt(offset + 1));
+        return new InputStream() {
+            @Override
+            public int read() {
+                return slice.hasRemaining() ? slice.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!slice.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, slice.remaining());
+                slice.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    /** Returns the ids of every object of type TYPE. */
+    List<ObjectId> ids(int type) {
+        List<ObjectId> result = new ArrayList<>();
+        for (int pos = 0; pos < _count; pos += 1) {
+            if (typeAt(pos) == type) {
+                result.add(idAt(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the header of a pack holding COUNT objects. */
+    static ByteBuffer packHeader(int count) {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+        header.putInt(PACK_MAGIC).putInt(VERSION).putInt(count);
+        header.flip();
+        return header;
+    }
+}
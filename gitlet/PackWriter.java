@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Writes a new pack and its index (see PackFile).  Entries are appended
+ *  in the order they are added; the index is sorted when the pack is
+ *  finished.  Packs are never modified once written.
+ *  @author Janani Sriram
+ */
+class PackWriter {
+
+    /** Directory receiving the finished pack. */
+    private final File _dir;
+
+    /** Temporary pack being written. */
+    private final File _tmp;
+
+    /** Stream over _tmp. */
+    private final DataOutputStream _out;
+
+    /** Ids added so far, in pack order. */
+    private final List<String> _ids = new ArrayList<>();
+
+    /** Offsets of the entries added so far, in pack order. */
+    private final List<Integer> _offsets = new ArrayList<>();
+
+    /** Offset of the next entry. */
+    private long _offset;
+
+    /** A writer for a new pack in directory DIR. */
+    PackWriter(File dir) {
+        _dir = dir;
+        _dir.mkdirs();
+        _tmp = Utils.join(dir, "tmp-" + System.nanoTime() + ".pack");
+        try {
+            _out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(_tmp.toPath()), 1 << 16));
+            _out.write(PackFile.packHeader(0).array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _offset = PackFile.PACK_HEADER;
+    }
+
+    /** Returns the number of bytes written so far. */
+    long length() {
+        return _offset;
+    }
+
+    /** Appends the object ID of type TYPE with payload DATA. */
+    void add(String id, int type, byte[] data) {
+        if (_offset + 5 + data.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("pack too large");
+        }
+        try {
+            _ids.add(id);
+            _offsets.add((int) _offset);
+            _out.writeByte(type);
+            _out.writeInt(data.length);
+            _out.write(data);
+            _offset += 5 + data.length;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Finishes the pack, writes its index and moves both into place.
+     *  Returns the pack file, or null if no objects were added. */
+    File finish() {
+        try {
+            _out.close();
+            if (_ids.isEmpty()) {
+                _tmp.delete();
+                return null;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(_tmp, "rw")) {
+                raf.write(PackFile.packHeader(_ids.size()).array());
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < _ids.size(); i += 1) {
+                order.add(i);
+            }
+            Collections.sort(order, (a, b) -> _ids.get(a).compareTo(
+                    _ids.get(b)));
+            List<String> sorted = new ArrayList<>();
+            for (int i : order) {
+                sorted.add(_ids.get(i));
+            }
+            String name = "pack-" + Utils.sha1(String.join("", sorted));
+
+            File index = Utils.join(_dir, name + ".idx");
+            File tmpIndex = Utils.join(_dir, name + ".idx.tmp");
+            try (DataOutputStream idx = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            tmpIndex.toPath()), 1 << 16))) {
+                idx.writeInt(PackFile.INDEX_MAGIC);
+                idx.writeInt(PackFile.VERSION);
+                idx.writeInt(sorted.size());
+                int[] fanout = new int[256];
+                for (String id : sorted) {
+                    fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+                }
+                int total = 0;
+                for (int i = 0; i < 256; i += 1) {
+                    total += fanout[i];
+                    idx.writeInt(total);
+                }
+                for (String id : sorted) {
+                    idx.write(Utils.hexToBytes(id));
+                }
+                for (int i : order) {
+                    idx.writeInt(_offsets.get(i));
+                }
+            }
+
+            File pack = Utils.join(_dir, name + ".pack");
+            Files.move(_tmp.toPath(), pack.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIndex.toPath(), index.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return pack;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Every branch of a repository and which one is current, packed into
+ *  the single file refs.  The file is read once, on first use, and held
+ *  in memory; changes are written back by replacing the whole file
+ *  through an atomic rename, so readers see either the old refs or the
+ *  new ones.
+ *
+ *  The first line of the file is the symbolic HEAD, "ref: " followed by
+ *  the name of the current branch.  Each further line is a branch: the
+ *  40-digit id of its commit, a space and its name, sorted by name.  The
+ *  current commit is always that of the current branch.
+ *
+ *  A repository made before refs were packed keeps one file per branch
+ *  in branches/, with HEAD.txt holding the current commit and
+ *  currBranchFileName.txt the name of the current branch.  Those files
+ *  are read when there is no refs file, and removed once one is written.
+ *  @author Janani Sriram
+ */
+class Refs {
+
+    /** Prefix of the symbolic HEAD line. */
+    static final String SYMBOLIC_PREFIX = "ref: ";
+
+    /** Branch of a new repository. */
+    static final String DEFAULT_BRANCH = "master";
+
+    /** The refs file. */
+    private final File _file;
+
+    /** Directory of a repository's per-branch files before packing. */
+    private final File _legacy;
+
+    /** Name of the current branch; null until loaded. */
+    private String _current;
+
+    /** Commit of each branch, by name. */
+    private final TreeMap<String, ObjectId> _branches = new TreeMap<>();
+
+    /** The refs of the repository whose metadata folder is
+     *  GITLETFOLDER. */
+    Refs(File gitletFolder) {
+        _file = Utils.join(gitletFolder, "refs");
+        _legacy = Utils.join(gitletFolder, "branches");
+    }
+
+    /** Starts the refs of a new repository: a single branch,
+     *  DEFAULT_BRANCH, at commit INITIAL, which is current. */
+    void init(ObjectId initial) {
+        _branches.clear();
+        _branches.put(DEFAULT_BRANCH, initial);
+        _current = DEFAULT_BRANCH;
+    }
+
+    /** Returns the name of the current branch. */
+    String current() {
+        load();
+        return _current;
+    }
+
+    /** Returns the id of the current commit. */
+    ObjectId head() {
+        return get(current());
+    }
+
+    /** Returns the commit of branch NAME, or null if there is none. */
+    ObjectId get(String name) {
+        load();
+        return _branches.get(name);
+    }
+
+    /** Returns true iff there is a branch called NAME. */
+    boolean contains(String name) {
+        load();
+        return _branches.containsKey(name);
+    }
+
+    /** Returns every branch's commit, by name in order. */
+    SortedMap<String, ObjectId> branches() {
+        load();
+        return Collections.unmodifiableSortedMap(_branches);
+    }
+
+    /** Points branch NAME, which is created if need be, at commit ID. */
+    void set(String name, ObjectId id) {
+        load();
+        _branches.put(name, id);
+    }
+
+    /** Removes branch NAME, which must not be current. */
+    void remove(String name) {
+        load();
+        _branches.remove(name);
+    }
+
+    /** Makes NAME, which must be a branch, the current branch. */
+    void setCurrent(String name) {
+        load();
+        _current = name;
+    }
+
+    /** Replaces the refs file with the refs as they now are, then drops
+     *  any per-branch files left from before refs were packed. */
+    void save() {
+        File tmp = Transaction.tempFile(_file.getParentFile());
+        try {
+            Files.write(tmp.toPath(), encode());
+            Files.move(tmp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dropLegacy();
+    }
+
+    /** Schedules replacing the refs file with the refs as they now are
+     *  when TXN commits. */
+    void save(Transaction txn) {
+        txn.writeRef(_file, encode());
+    }
+
+    /** Returns the contents of the refs file for the refs as they now
+     *  are. */
+    private byte[] encode() {
+        load();
+        StringBuilder out = new StringBuilder(SYMBOLIC_PREFIX.length()
+            + (ObjectId.HEX_LENGTH + 16) * (_branches.size() + 1));
+        out.append(SYMBOLIC_PREFIX).append(_current).append('\n');
+        for (Map.Entry<String, ObjectId> branch : _branches.entrySet()) {
+            out.append(branch.getValue().name()).append(' ')
+                .append(branch.getKey()).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Reads the refs, unless they have been read already. */
+    private void load() {
+        if (_current != null) {
+            return;
+        }
+        if (!_file.isFile()) {
+            loadLegacy();
+            return;
+        }
+        String[] lines = Utils.readContentsAsString(_file).split("\n");
+        if (!lines[0].startsWith(SYMBOLIC_PREFIX)) {
+            throw new IllegalArgumentException("corrupt refs file");
+        }
+        for (int i = 1; i < lines.length; i += 1) {
+            String line = lines[i];
+            ObjectId id = line.length() > ObjectId.HEX_LENGTH
+                ? ObjectId.parse(line.substring(0, ObjectId.HEX_LENGTH))
+                : null;
+            if (id == null || line.charAt(ObjectId.HEX_LENGTH) != ' ') {
+                throw new IllegalArgumentException("corrupt refs file");
+            }
+            _branches.put(line.substring(ObjectId.HEX_LENGTH + 1), id);
+        }
+        _current = lines[0].substring(SYMBOLIC_PREFIX.length());
+    }
+
+    /** Reads the refs from the per-branch files of a repository made
+     *  before refs were packed.  HEAD.txt, rather than the current
+     *  branch's own file, holds the current commit. */
+    private void loadLegacy() {
+        List<String> names = Utils.plainFilenamesIn(_legacy);
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".txt") && !name.equals("HEAD.txt")
+                        && !name.startsWith("currBranch")) {
+                    ObjectId id = ObjectId.parse(Utils.readContentsAsString(
+                        Utils.join(_legacy, name)));
+                    if (id != null) {
+                        _branches.put(
+                            name.substring(0, name.length() - 4), id);
+                    }
+                }
+            }
+        }
+        File current = Utils.join(_legacy, "currBranchFileName.txt");
+        _current = current.isFile()
+            ? Utils.readContentsAsString(current) : DEFAULT_BRANCH;
+        File head = Utils.join(_legacy, "HEAD.txt");
+        if (head.isFile()) {
+            ObjectId id = ObjectId.parse(Utils.readContentsAsString(head));
+            if (id != null) {
+                _branches.put(_current, id);
+            }
+        }
+    }
+
+    /** Deletes the per-branch files of a repository made before refs
+     *  were packed, if there are any. */
+    private void dropLegacy() {
+        List<String> names = Utils.plainFilenamesIn(_legacy);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            Utils.join(_legacy, name).delete();
+        }
+        _legacy.delete();
+    }
+}
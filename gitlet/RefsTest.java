@@ -0,0 +1,105 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/** Tests of the packed refs file.
+ *  @author Janani Sriram
+ */
+public class RefsTest {
+
+    /** Returns a commit id made from TEXT. */
+    static ObjectId id(String text) {
+        return ObjectId.hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Branches and the current branch survive a save, and the file
+     *  lists the branches sorted by name after the symbolic HEAD. */
+    @Test
+    public void saveAndReload() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            Refs refs = new Refs(dir);
+            refs.init(id("initial"));
+            refs.set("topic", id("topic"));
+            refs.set("feature", id("feature"));
+            refs.setCurrent("topic");
+            refs.save();
+
+            Refs read = new Refs(dir);
+            assertEquals("topic", read.current());
+            assertEquals(id("topic"), read.head());
+            assertEquals(List.of("feature", "master", "topic"),
+                List.copyOf(read.branches().keySet()));
+            assertTrue(read.contains("feature"));
+            assertFalse(read.contains("other"));
+            assertNull(read.get("other"));
+            assertEquals("ref: topic\n"
+                + id("feature").name() + " feature\n"
+                + id("initial").name() + " master\n"
+                + id("topic").name() + " topic\n",
+                Utils.readContentsAsString(new File(dir, "refs")));
+
+            read.remove("feature");
+            read.setCurrent("master");
+            read.save();
+            read = new Refs(dir);
+            assertEquals(Map.of("master", id("initial"), "topic", id("topic")),
+                read.branches());
+            assertEquals(id("initial"), read.head());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A repository that keeps a file per branch is read from those
+     *  files, with HEAD.txt giving the current commit, and the files
+     *  are dropped once the refs are saved. */
+    @Test
+    public void legacyBranchFiles() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            File branches = new File(dir, "branches");
+            branches.mkdir();
+            Utils.writeContents(new File(branches, "master.txt"),
+                id("old master").name());
+            Utils.writeContents(new File(branches, "side.txt"),
+                id("side").name());
+            Utils.writeContents(new File(branches, "HEAD.txt"),
+                id("master").name());
+            Utils.writeContents(new File(branches,
+                "currBranchFileName.txt"), "master");
+
+            Refs refs = new Refs(dir);
+            assertEquals("master", refs.current());
+            assertEquals(id("master"), refs.head());
+            assertEquals(id("side"), refs.get("side"));
+            refs.save();
+            assertFalse(branches.exists());
+            refs = new Refs(dir);
+            assertEquals(id("master"), refs.head());
+            assertEquals(2, refs.branches().size());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A refs file without the symbolic HEAD is rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptRefsRejected() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            Utils.writeContents(new File(dir, "refs"),
+                id("master").name() + " master\n");
+            new Refs(dir).current();
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
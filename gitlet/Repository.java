@@ -1,11 +1,28 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
 
 /** Repository class.
  * @author Janani Sriram
@@ -25,35 +42,78 @@ public class Repository {
     /** Staging area. */
     private static File _stagingArea = Utils.join(_gitletFolder, "staging");
 
-    /** Staging area's file. */
-    private static File _stageFile = Utils.join(_stagingArea, "stage.txt");
+    /** Stat cache of working files, next to the staging area's file. */
+    private static File _indexFile = Utils.join(_stagingArea, "index");
 
     /** Blob directory. */
     private static File _blobs = Utils.join(_gitletFolder, "blobs");
 
-    /** Branches directory. */
-    private static File _branches = Utils.join(_gitletFolder, "branches");
-
     /** Global log directory. */
     private static File _globalLog = Utils.join(_gitletFolder, "global-log");
 
-    /** Master branch file. */
-    private static File _master = Utils.join(_branches, "master.txt");
+    /** Names the last commit whose graph, index and journal updates may
+     * not have finished. */
+    private static File _pendingCommit = Utils.join(_gitletFolder,
+            "pending-commit");
+
+    /** Branches and the current branch, read once per command. */
+    private Refs _refs = new Refs(_gitletFolder);
+
+    /** Files written with conflict markers by the merge in progress. */
+    private ArrayList<String> mergeConflictFiles = new ArrayList<>();
+
+    /** Characters that make a path given to add a glob pattern. */
+    private static final Pattern GLOB_CHARS = Pattern.compile("[*?\\[{]");
+
+    /** Object store holding every commit and blob. */
+    private static ObjectStore _store = new ObjectStore(_gitletFolder);
+
+    /** Commit graph of every commit's parents and generation. */
+    private static CommitGraph _graph = new CommitGraph(_gitletFolder);
 
-    /** Head branch file. */
-    private static File _head = Utils.join(_branches, "HEAD.txt");
+    /** Index of commits by message. */
+    private static MessageIndex _messages = new MessageIndex(_gitletFolder);
 
-    /** Current branch's file name. */
-    private File currBranchFileNameInstanceVar =
-            Utils.join(_branches, "currBranchFileName.txt");
+    /** Journal of every commit, as global-log prints it. */
+    private static CommitJournal _journal = new CommitJournal(_gitletFolder);
+
+    /** Most decoded commits kept in the commit cache. */
+    static final int COMMIT_CACHE_SIZE = 256;
+
+    /** Largest blob kept in the blob cache, in bytes. */
+    static final int CACHED_BLOB_LIMIT = 64 * 1024;
+
+    /** Most bytes of blob contents kept in the blob cache. */
+    static final long BLOB_CACHE_BYTES = 4L * 1024 * 1024;
+
+    /** Guards the commit and blob caches and their counters, which add's
+     *  parallel hashing, materializer workers and daemon commands all
+     *  reach; even a lookup reorders an access-ordered map. */
+    private static final Object CACHE_LOCK = new Object();
+
+    /** Recently read commits by UID, least recently used first. Objects
+     *  never change once written, so entries are never invalidated. */
+    private static final LinkedHashMap<ObjectId, Commit> COMMIT_CACHE =
+        new LinkedHashMap<>(COMMIT_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<ObjectId, Commit> eldest) {
+                return size() > COMMIT_CACHE_SIZE;
+            }
+        };
 
-    /** Current branch's UID. */
-    private File currBranchUIDInstanceVar =
-            Utils.join(_branches, "currBranchUID.txt");
+    /** Recently read small blobs by UID, least recently used first. */
+    private static final LinkedHashMap<ObjectId, byte[]> BLOB_CACHE =
+        new LinkedHashMap<>(16, 0.75f, true);
 
-    /** Current branch. */
-    private File currBranchInstanceVar =
-            Utils.join(_branches, "currBranchObject.txt");
+    /** Total size of the blobs in BLOB_CACHE. */
+    private static long _blobCacheBytes;
+
+    /** Number of reads answered from the caches. */
+    private static long _cacheHits;
+
+    /** Number of reads that went to the object store. */
+    private static long _cacheMisses;
 
     /** Repository constructor. */
     public Repository() {
@@ -67,43 +127,287 @@ public class Repository {
         return _commitDir;
     }
 
-    /** Gets curr branch's file name.
+    /** Gets object store.
      *
-     * @return current branch's file name
+     * @return object store
      * */
-    private File getCurrBranchFileNameInstanceVar() {
-        return currBranchFileNameInstanceVar;
+    public static ObjectStore getStore() {
+        return _store;
+    }
+
+    /** Drops the mapped pack and commit-graph files that another process
+     * has replaced since they were read, which the pack directory listing
+     * and the commit-graph chain show. A long-lived process calls this
+     * before each command, so commands run by a plain JVM in between are
+     * seen. Refs and the stage are read afresh by every command anyway.
+     * Cached commits and blobs are kept: an object's contents never
+     * change under its UID. The message index and the journal keep no
+     * state between calls. */
+    public static void refresh() {
+        _store.refresh();
+        _graph.refresh();
     }
 
-    /** Gets curr branch's UID.
+    /** Gets main metadata folder.
      *
-     * @return current branch's UID
+     * @return main metadata folder
      * */
-    private File getCurrBranchUIDInstanceVar() {
-        return currBranchUIDInstanceVar;
+    public static File getGitletFolder() {
+        return _gitletFolder;
     }
 
-    /** Gets curr branch.
+    /** Gets the commit graph, building it first if this repository does
+     * not have one yet.
      *
-     * @return current branch
+     * @return commit graph
      * */
-    private File getCurrBranchInstanceVar() {
-        return currBranchInstanceVar;
+    private CommitGraph graph() {
+        finishCommit();
+        if (!_graph.exists()) {
+            _graph.rebuild(_store);
+        }
+        return _graph;
     }
 
-    /** Updates currBranch suite of instance variables.
+    /** Gets the message index, rebuilding it first if it is missing or
+     * incomplete.
      *
-     * @param branchName branch name
+     * @return message index
      * */
+    private MessageIndex messages() {
+        finishCommit();
+        if (!_messages.exists()) {
+            _messages.rebuild(_store);
+        }
+        return _messages;
+    }
+
+    /** Adds the commit named in the pending-commit file, if there is one,
+     * to the commit graph, the message index and the commit journal
+     * wherever it is still missing, then removes the file. Commit
+     * publishes that file together with the refs, so a commit cut short
+     * after its refs changed is finished by the next command reading
+     * any of the three.
+     * */
+    private void finishCommit() {
+        if (!_pendingCommit.isFile()) {
+            return;
+        }
+        ObjectId id = ObjectId.parse(
+                Utils.readContentsAsString(_pendingCommit));
+        if (_store.contains(id)) {
+            Commit commit = readCommit(id);
+            if (_graph.exists()) {
+                _graph.add(List.of(commit));
+            }
+            if (_messages.exists()
+                    && !_messages.find(commit.getMessage()).contains(id)) {
+                _messages.add(commit);
+            }
+            if (!_journal.endsWith(commit)) {
+                _journal.add(commit, _store);
+            }
+        }
+        _pendingCommit.delete();
+    }
 
-    public void currBranchUpdater(String branchName) {
-        Utils.writeContents(currBranchFileNameInstanceVar, branchName);
-        Utils.writeContents(currBranchUIDInstanceVar,
-                Utils.readContentsAsString(_head));
-        Utils.writeObject(currBranchInstanceVar, Utils.readObject(
-                Utils.join(_commitDir,
-                        Utils.readContentsAsString(currBranchUIDInstanceVar)
-                                + ".txt"), Commit.class));
+    /** Deletes a working file and any directories that removing it
+     * leaves empty.
+     *
+     * @param fileName path of the file, relative to the working directory
+     * */
+    private void deleteWorkingFile(String fileName) {
+        File file = Utils.join(CWD, fileName);
+        if (file.getParentFile().equals(CWD)) {
+            Utils.restrictedDelete(file);
+            return;
+        }
+        file.delete();
+        for (File dir = file.getParentFile();
+             !dir.equals(CWD) && dir.delete(); dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** Makes the working tree hold the files of commit TO, given that it
+     * last held those of commit FROM and STAGE is the staging area,
+     * touching only what differs. The commits' trees are compared,
+     * skipping identical subtrees; files tracked by FROM but not TO are
+     * deleted and files added or changed in TO are written. Nothing
+     * else is read or stat'ed, so the cost follows the size of the
+     * change, not of the repository; as in Git, a working copy of a
+     * file both commits hold alike is left as it is. If an untracked
+     * file would be overwritten, nothing is done. The files are written
+     * in parallel by a Materializer, all or nothing; on failure its
+     * report is printed. Every file written is recorded in the stat
+     * cache.
+     *
+     * @param from commit the working tree was checked out from
+     * @param to commit to check out
+     * @param stage current staging area
+     * @return true iff the working tree was updated
+     * */
+    private boolean checkoutCommitTree(Commit from, Commit to,
+                                       StagingArea stage) {
+        TreeMap<String, ObjectId> changed =
+                Tree.diff(_store, from.getTree(), to.getTree());
+        for (Map.Entry<String, ObjectId> change : changed.entrySet()) {
+            String fileName = change.getKey();
+            if (change.getValue() != null
+                    && Utils.join(CWD, fileName).isFile()
+                    && (stage.isUntracked(fileName)
+                    || (!stage.isTracked(fileName) && Tree.lookup(_store,
+                            from.getTree(), fileName) == null))) {
+                System.out.println("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+                return false;
+            }
+        }
+        StatIndex index = readIndex();
+        Materializer update = new Materializer(_store, CWD);
+        for (Map.Entry<String, ObjectId> change : changed.entrySet()) {
+            if (change.getValue() != null) {
+                update.write(change.getKey(), change.getValue());
+            } else {
+                if (Utils.join(CWD, change.getKey()).isFile()) {
+                    update.delete(change.getKey());
+                }
+                index.forget(change.getKey());
+            }
+        }
+        try {
+            update.run();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return false;
+        }
+        for (Map.Entry<String, ObjectId> blob
+                : update.writes().entrySet()) {
+            index.record(blob.getKey(), Utils.join(CWD, blob.getKey()),
+                    blob.getValue());
+        }
+        index.write();
+        return true;
+    }
+
+    /** Reads the stat cache of working files.
+     *
+     * @return stat cache
+     * */
+    private StatIndex readIndex() {
+        return new StatIndex(_indexFile);
+    }
+
+    /** Reads the staging area.
+     *
+     * @return staging area
+     * */
+    private StagingArea readStage() {
+        return new StagingArea(_stagingArea);
+    }
+
+    /** Writes the staging area.
+     *
+     * @param stage staging area to write
+     * */
+    private void writeStage(StagingArea stage) {
+        stage.write();
+    }
+
+    /** Resolves a full or abbreviated commit UID through the sorted ids
+     * of the commit graph. Prints why if no commit or more than one
+     * commit matches.
+     *
+     * @param prefix commit UID or a prefix of one
+     * @return the commit's UID, or null if it could not be resolved
+     * */
+    private ObjectId resolveCommit(String prefix) {
+        List<ObjectId> matches = graph().withPrefix(prefix);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (matches.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous; "
+                    + "it could be any of:");
+            for (ObjectId id : matches) {
+                System.out.println(id);
+            }
+            return null;
+        }
+        return matches.get(0);
+    }
+
+    /** Reads a commit from the object store.
+     *
+     * @param commitUID commit's UID
+     * @return commit with that UID
+     * */
+    private Commit readCommit(ObjectId commitUID) {
+        synchronized (CACHE_LOCK) {
+            Commit commit = COMMIT_CACHE.get(commitUID);
+            if (commit != null) {
+                _cacheHits += 1;
+                return commit;
+            }
+            _cacheMisses += 1;
+        }
+        Commit commit = _store.readCommit(commitUID);
+        synchronized (CACHE_LOCK) {
+            COMMIT_CACHE.put(commitUID, commit);
+        }
+        return commit;
+    }
+
+    /** Reads a blob from the object store.
+     *
+     * @param blobUID blob's UID
+     * @return blob contents
+     * */
+    private byte[] readBlob(ObjectId blobUID) {
+        synchronized (CACHE_LOCK) {
+            byte[] contents = BLOB_CACHE.get(blobUID);
+            if (contents != null) {
+                _cacheHits += 1;
+                return contents;
+            }
+            _cacheMisses += 1;
+        }
+        byte[] contents = _store.read(blobUID);
+        if (contents.length <= CACHED_BLOB_LIMIT) {
+            synchronized (CACHE_LOCK) {
+                byte[] old = BLOB_CACHE.put(blobUID, contents);
+                _blobCacheBytes += contents.length
+                    - (old == null ? 0 : old.length);
+                Iterator<byte[]> eldest = BLOB_CACHE.values().iterator();
+                while (_blobCacheBytes > BLOB_CACHE_BYTES) {
+                    _blobCacheBytes -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+        }
+        return contents;
+    }
+
+    /** Gets the number of commit and blob reads answered from the
+     *  in-process caches.
+     *
+     * @return cache hits
+     * */
+    public static long getCacheHits() {
+        synchronized (CACHE_LOCK) {
+            return _cacheHits;
+        }
+    }
+
+    /** Gets the number of commit and blob reads that missed the
+     *  in-process caches.
+     *
+     * @return cache misses
+     * */
+    public static long getCacheMisses() {
+        synchronized (CACHE_LOCK) {
+            return _cacheMisses;
+        }
     }
 
     /** Creates a new Gitlet version-control system in the current
@@ -137,38 +441,27 @@ public class Repository {
         if (_gitletFolder.exists()) {
             System.out.println("A Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
+            return;
         }
 
         _gitletFolder.mkdirs();
         _commitDir.mkdirs();
         _stagingArea.mkdirs();
         _blobs.mkdirs();
-        _branches.mkdirs();
         _globalLog.mkdirs();
+        _store.shard();
 
         Commit initial = new Commit("initial commit", new HashMap<>(), null);
 
-        try {
-            _master.createNewFile();
-            _head.createNewFile();
-
-            Utils.writeContents(_master, initial.getUID());
-            Utils.writeContents(_head, initial.getUID());
-        } catch (IOException i) {
-            System.out.println("IOException " + i
-                    + ": creating new files did not work "
-                    + "in Repository.java's .init()");
-            i.printStackTrace();
-        }
+        _refs.init(initial.getUID());
+        _refs.save();
 
-        currBranchUpdater("master");
+        _graph.add(List.of(initial));
+        _messages.rebuild(_store);
+        _journal.rebuild(_store);
 
-        Utils.writeObject(Utils.join(_commitDir,
-                initial.getUID() + ".txt"), initial);
-
-        StagingArea stage = new StagingArea();
-        Utils.writeObject(_stageFile, stage);
+        StagingArea stage = readStage();
+        writeStage(stage);
     }
 
     /** Saves a snapshot of tracked files in the current commit and
@@ -249,12 +542,21 @@ public class Repository {
      */
 
     public void commit(String message, boolean isMerge) {
-        StagingArea stage = Utils.readObject(_stageFile, StagingArea.class);
-        Commit currentBranchCommit = getCurrentCommit();
+        commit(message, isMerge, null);
+    }
 
-        if ((stage.getTrackedFiles().isEmpty()
-                && stage.getUntrackedFiles().isEmpty())
-                && !isMerge) {
+    /** Commits the staging area, recording a second parent for merges.
+     *
+     * @param message commit message
+     * @param isMerge if function is called in merge()
+     * @param mergeParentUID UID of the merged-in commit, or null
+     */
+
+    public void commit(String message, boolean isMerge,
+                       ObjectId mergeParentUID) {
+        StagingArea stage = readStage();
+
+        if (stage.isEmpty() && !isMerge) {
             System.out.print("No changes added to the commit.");
             return;
         } else if (message.isEmpty()) {
@@ -263,35 +565,35 @@ public class Repository {
         }
         Commit curr = getCurrentCommit();
 
-        HashMap<String, String> copiedBlobs = new HashMap<>();
-        copiedBlobs.putAll(curr.getBlobs());
-
-        ArrayList<String> filesToAdd =
-                new ArrayList<>(stage.getTrackedFiles().keySet());
-        for (String fileName : filesToAdd) {
-            copiedBlobs.put(fileName, stage.getTrackedFiles().get(fileName));
+        HashMap<String, ObjectId> changes = new HashMap<>();
+        changes.putAll(stage.getTrackedFiles());
+        for (String fileToRemove : stage.getUntrackedFiles()) {
+            changes.put(fileToRemove, null);
         }
-
-        ArrayList<String> removeFiles =
-                new ArrayList<>(stage.getUntrackedFiles().keySet());
-        for (String fileToRemove : removeFiles) {
-            copiedBlobs.remove(fileToRemove);
+        Transaction txn = new Transaction();
+        Commit newCommit;
+        _store.begin(txn);
+        try {
+            for (ObjectId blob : stage.getTrackedFiles().values()) {
+                _store.sync(blob);
+            }
+            ObjectId tree = Tree.update(_store, curr.getTree(), changes);
+            newCommit = new Commit(message, tree, curr.getUID(),
+                    mergeParentUID);
+            _refs.set(_refs.current(), newCommit.getUID());
+            txn.writeRef(_pendingCommit, newCommit.getUID().name()
+                    .getBytes(StandardCharsets.UTF_8));
+            _refs.save(txn);
+            stage.clear();
+            stage.write(txn);
+        } catch (RuntimeException excp) {
+            txn.abort();
+            throw excp;
+        } finally {
+            _store.end();
         }
-
-        Commit newCommit = new Commit(message, copiedBlobs, curr.getUID());
-
-        Utils.writeContents(Utils.join(_branches,
-                Utils.readContentsAsString(currBranchFileNameInstanceVar)
-                        + ".txt"), newCommit.getUID());
-
-        Utils.writeContents(_head, newCommit.getUID());
-
-
-
-        Utils.writeObject(Utils.join(_commitDir, newCommit.getUID()
-                + ".txt"), newCommit);
-        stage.clear();
-        Utils.writeObject(_stageFile, stage);
+        txn.commit();
+        finishCommit();
     }
 
     /** Get current commit.
@@ -300,9 +602,7 @@ public class Repository {
      * */
 
     public Commit getCurrentCommit() {
-        String thisUID = Utils.readContentsAsString(_head);
-        return Utils.readObject(Utils.join(_commitDir, thisUID
-                + ".txt"), Commit.class);
+        return readCommit(_refs.head());
     }
 
     /** Get parent commit.
@@ -312,13 +612,16 @@ public class Repository {
      * */
 
     public Commit getParentCommit(Commit currCommit) {
-        String parentUID = null;
+        ObjectId parentUID = null;
         if (currCommit != null) {
-            parentUID = currCommit.getParentUID().get(0);
+            if (graph().find(currCommit.getUID()) >= 0) {
+                parentUID = _graph.firstParent(currCommit.getUID());
+            } else {
+                parentUID = currCommit.getParentUID().get(0);
+            }
         }
         if (parentUID != null) {
-            return Utils.readObject(Utils.join(_commitDir, parentUID
-                    + ".txt"), Commit.class);
+            return readCommit(parentUID);
         } else {
             return null;
         }
@@ -344,50 +647,182 @@ public class Repository {
      * removal (see gitlet rm), if it was
      * at the time of the command.
      *
-     * @param file file name
+     * @param path file name, relative to the working directory
      * @param isMerge merge boolean
      * */
 
-    public void add(String file, boolean isMerge) {
+    public void add(String path, boolean isMerge) {
+        String file = normalizePath(path);
+        if (file == null) {
+            System.out.println("Path is outside the repository.");
+            return;
+        }
         File addFile = new File(file);
         File findFile = null;
 
         Commit headCommit = getCurrentCommit();
-        StagingArea currStage = Utils.readObject(
-                Utils.join(_stagingArea, "stage.txt"), StagingArea.class);
+        StagingArea currStage = readStage();
 
 
         if (addFile.exists()) {
-            byte[] blob = Utils.readContents(addFile);
-            String blobUID = Utils.sha1(blob);
-
-            if (headCommit != null
-                    && headCommit.getBlobs().get(file) != null
-                    && headCommit.getBlobs().get(file).equals(blobUID)) {
-                if (currStage.getUntrackedFiles().containsKey(file)) {
-                    currStage.getUntrackedFiles().remove(file);
-                    Utils.writeObject(Utils.join(
-                            _stagingArea, "stage.txt"), currStage);
+            StatIndex index = readIndex();
+            ObjectId blobUID = index.cached(file, addFile);
+            if (blobUID == null || !_store.contains(blobUID)) {
+                blobUID = _store.insertFile(addFile);
+                index.record(file, addFile, blobUID);
+                index.write();
+            }
+
+            stageBlob(currStage, headCommit, file, blobUID);
+            writeStage(currStage);
+        } else {
+            if (!isMerge) {
+                System.out.println("File does not exist.");
+                return;
+            }
+        }
+    }
+
+    /** Adds every file named by PATHS in one go. Each path may name a
+     * file, a directory, all of whose files are added, or a glob pattern
+     * matched against the paths of the working files. The staging area,
+     * stat cache and head commit are read once and written once, and
+     * the files are hashed and stored in parallel. If some path matches
+     * no file or lies outside the repository, nothing is staged.
+     *
+     * @param paths files, directories and glob patterns
+     * */
+
+    public void add(List<String> paths) {
+        LinkedHashSet<String> files = new LinkedHashSet<>();
+        WorkTree tree = null;
+        for (String given : paths) {
+            String path = normalizePath(given);
+            if (path == null) {
+                System.out.println("Path is outside the repository.");
+                return;
+            }
+            if (new File(path).isFile()) {
+                files.add(path);
+                continue;
+            }
+            List<String> matched = List.of();
+            if (new File(path).isDirectory()
+                    || GLOB_CHARS.matcher(path).find()) {
+                if (tree == null) {
+                    tree = WorkTree.scan(CWD);
                 }
+                matched = matchWorkFiles(tree, path);
+            }
+            if (matched.isEmpty()) {
+                System.out.println("File does not exist.");
                 return;
             }
-            if (currStage.getUntrackedFiles().containsKey(file)) {
-                currStage.getUntrackedFiles().remove(file);
+            files.addAll(matched);
+        }
+
+        Commit headCommit = getCurrentCommit();
+        StagingArea currStage = readStage();
+        StatIndex index = readIndex();
+        List<String> names = new ArrayList<>(files);
+        ObjectId[] blobs = new ObjectId[names.size()];
+        boolean[] hashed = new boolean[names.size()];
+        IntStream.range(0, names.size()).parallel().forEach(i -> {
+            File file = new File(names.get(i));
+            blobs[i] = index.cached(names.get(i), file);
+            if (blobs[i] == null || !_store.contains(blobs[i])) {
+                blobs[i] = _store.insertFile(file);
+                hashed[i] = true;
             }
+        });
+        for (int i = 0; i < names.size(); i += 1) {
+            if (hashed[i]) {
+                index.record(names.get(i), new File(names.get(i)), blobs[i]);
+            }
+            stageBlob(currStage, headCommit, names.get(i), blobs[i]);
+        }
+        index.write();
+        writeStage(currStage);
+    }
 
-            Utils.writeContents(Utils.join(
-                    _blobs, blobUID + ".txt"), blob);
+    /** Stages a working file holding a blob for addition, unless the head
+     * commit already holds that blob under its name, in which case any
+     * earlier addition is unstaged. Either way, the file is no longer
+     * staged for removal.
+     *
+     * @param stage staging area to update
+     * @param headCommit current commit
+     * @param file file name
+     * @param blobUID UID of the file's contents
+     * */
+    private void stageBlob(StagingArea stage, Commit headCommit,
+                           String file, ObjectId blobUID) {
+        stage.removeUntracked(file);
+        if (headCommit != null
+                && blobUID.equals(headCommit.getBlobs().get(file))) {
+            stage.removeTracked(file);
+            return;
+        }
+        stage.addTracked(file, blobUID);
+    }
 
-            currStage.getTrackedFiles().put(file, blobUID);
+    /** Returns PATH, as given on the command line, as a path relative to
+     * the working directory with no "." or ".." parts and no trailing
+     * slash, so that "./a.txt" and "sub/../a.txt" both become "a.txt".
+     * The working directory itself becomes ".".
+     *
+     * @param path path relative to the working directory
+     * @return the normalized path, or null if PATH lies outside the
+     *         repository
+     * */
+    static String normalizePath(String path) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path full;
+        try {
+            full = root.resolve(path).normalize();
+        } catch (InvalidPathException excp) {
+            return path;
+        }
+        if (!full.startsWith(root)) {
+            return null;
+        }
+        String result = root.relativize(full).toString()
+                .replace(File.separatorChar, '/');
+        return result.isEmpty() ? "." : result;
+    }
 
-            Utils.writeObject(Utils.join(
-                    _stagingArea, "stage.txt"), currStage);
-        } else {
-            if (!isMerge) {
-                System.out.println("File does not exist.");
-                return;
+    /** Lists the working files a normalized path given to add names, when
+     * it is not itself a file: all files under it if it is a directory,
+     * or those whose paths match it if it is a glob pattern.
+     *
+     * @param tree snapshot of the working tree
+     * @param dir directory or glob pattern
+     * @return paths of the matching files, in order
+     * */
+    private List<String> matchWorkFiles(WorkTree tree, String dir) {
+        ArrayList<String> result = new ArrayList<>();
+        if (new File(dir).isDirectory()) {
+            String prefix = dir.equals(".") ? "" : dir + "/";
+            for (String file : tree.paths()) {
+                if (file.startsWith(prefix)) {
+                    result.add(file);
+                }
+            }
+        } else if (GLOB_CHARS.matcher(dir).find()) {
+            PathMatcher matcher;
+            try {
+                matcher = FileSystems.getDefault()
+                        .getPathMatcher("glob:" + dir);
+            } catch (PatternSyntaxException excp) {
+                return result;
+            }
+            for (String file : tree.paths()) {
+                if (matcher.matches(Paths.get(file))) {
+                    result.add(file);
+                }
             }
         }
+        return result;
     }
 
     /** Starting at the current head commit, display information
@@ -443,8 +878,10 @@ public class Repository {
             System.out.println("commit " + currCommit.getUID());
 
             if (currCommit.getParentUID().size() > 1) {
-                System.out.println("Merge: " + currCommit.getParentUID().get(0)
-                        + " " + currCommit.getParentUID().get(1));
+                System.out.println("Merge: "
+                        + currCommit.getParentUID().get(0).abbreviate(7)
+                        + " "
+                        + currCommit.getParentUID().get(1).abbreviate(7));
             }
 
             System.out.println("Date: " + currCommit.getTimestamp());
@@ -499,16 +936,15 @@ public class Repository {
             return;
         }
 
-        String currCommitBlobUID = currCommit.getBlobs().get(fileName);
+        ObjectId currCommitBlobUID = currCommit.getBlobs().get(fileName);
 
         File file = Utils.join(CWD, fileName);
         if (file.exists()) {
-            Utils.restrictedDelete(file);
+            deleteWorkingFile(fileName);
         }
 
-        File blob = Utils.join(_blobs, currCommitBlobUID + ".txt");
         File writeFile = Utils.join(CWD, fileName);
-        Utils.writeContents(writeFile, Utils.readContents(blob));
+        _store.copyTo(currCommitBlobUID, writeFile);
     }
 
     /**
@@ -527,37 +963,26 @@ public class Repository {
      * */
 
     public void checkoutCommitIDAndFile(String commitUID, String fileName) {
-        File wantedFile = Utils.join(_commitDir, commitUID + ".txt");
-
-        for (File fileNameTxt : _commitDir.listFiles()) {
-            if (fileNameTxt.getName().startsWith(commitUID)) {
-                wantedFile = Utils.join(_commitDir, fileNameTxt.getName());
-            }
-        }
-
-        Commit wantedCommit = null;
-
-        try {
-            wantedCommit = Utils.readObject(wantedFile, Commit.class);
-        } catch (IllegalArgumentException i) {
-            System.out.println("No commit with that id exists.");
+        ObjectId wantedUID = resolveCommit(commitUID);
+        if (wantedUID == null) {
             return;
         }
+        Commit wantedCommit = readCommit(wantedUID);
 
         if (!wantedCommit.getBlobs().containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
             return;
         } else {
-            String currCommitBlobUID = wantedCommit.getBlobs().get(fileName);
+            ObjectId currCommitBlobUID =
+                    wantedCommit.getBlobs().get(fileName);
 
             File file = Utils.join(CWD, fileName);
             if (file.exists()) {
-                Utils.restrictedDelete(file);
+                deleteWorkingFile(fileName);
             }
 
-            File blob = Utils.join(_blobs, currCommitBlobUID + ".txt");
             File writeFile = Utils.join(CWD, fileName);
-            Utils.writeContents(writeFile, Utils.readContents(blob));
+            _store.copyTo(currCommitBlobUID, writeFile);
         }
     }
 
@@ -582,64 +1007,29 @@ public class Repository {
      * */
 
     public void checkoutBranch(String branchName) {
-        StagingArea currStage = Utils.readObject(_stageFile, StagingArea.class);
-        File checkoutBranch = Utils.join(_branches, branchName + ".txt");
-        if (!checkoutBranch.exists()) {
+        StagingArea currStage = readStage();
+        if (!_refs.contains(branchName)) {
             System.out.println("No such branch exists.");
             return;
         }
-        if (branchName.equals(Utils.readContentsAsString(
-                currBranchFileNameInstanceVar))) {
+        if (branchName.equals(_refs.current())) {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        currBranchUpdater(branchName);
-        ArrayList<File> filesInCWD = new ArrayList<>();
-        for (File f : CWD.listFiles()) {
-            if (f.getName().endsWith(".txt")) {
-                filesInCWD.add(f);
-            }
-        }
         Commit checkoutBranchCommit = null;
-        String checkoutBranchCommitUID =
-                Utils.readContentsAsString(checkoutBranch) + ".txt";
-        if (Utils.join(_commitDir, checkoutBranchCommitUID).exists()) {
-            checkoutBranchCommit = Utils.readObject(
-                    Utils.join(_commitDir, checkoutBranchCommitUID),
-                    Commit.class);
+        ObjectId checkoutBranchCommitUID = _refs.get(branchName);
+        if (_store.contains(checkoutBranchCommitUID)) {
+            checkoutBranchCommit = readCommit(checkoutBranchCommitUID);
         }
         Commit currCommit = getCurrentCommit();
-        Utils.writeContents(checkoutBranch, Utils.readContentsAsString(_head));
-        for (File f : filesInCWD) {
-            if (!currCommit.getBlobs().containsKey(f.getName())
-                    && checkoutBranchCommit.getBlobs().
-                    containsKey(f.getName())) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-        Commit currBranch = Utils.readObject(
-                currBranchInstanceVar, Commit.class);
-        for (File f : filesInCWD) {
-            if (currBranch.getBlobs().containsKey(f.getName())
-                    && !checkoutBranchCommit.getBlobs().
-                    containsKey(f.getName())) {
-                Utils.restrictedDelete(f);
-            }
-        }
-        ArrayList<String> fileNames = new ArrayList<>(checkoutBranchCommit.
-                getBlobs().keySet());
-        for (String fileName : fileNames) {
-            File blob = Utils.join(_blobs,
-                    checkoutBranchCommit.getBlobs().
-                            get(fileName) + ".txt");
-            File writeFile = Utils.join(CWD, fileName);
-            Utils.writeContents(writeFile, Utils.readContents(blob));
+        if (!checkoutCommitTree(currCommit, checkoutBranchCommit,
+                currStage)) {
+            return;
         }
-        Utils.writeContents(_head, checkoutBranchCommit.getUID());
+        _refs.setCurrent(branchName);
+        _refs.save();
         currStage.clear();
-        Utils.writeObject(_stageFile, currStage);
+        writeStage(currStage);
     }
 
     /** Unstage the file if it is currently staged for addition.
@@ -656,10 +1046,8 @@ public class Repository {
 
     public void rm(String fileName, boolean isMerge) {
         Commit currCommit = getCurrentCommit();
-        StagingArea currStage = Utils.readObject(_stageFile,
-                StagingArea.class);
-        boolean staged = currStage.getTrackedFiles().
-                containsKey(fileName);
+        StagingArea currStage = readStage();
+        boolean staged = currStage.isTracked(fileName);
         boolean tracked = false;
 
         ArrayList<String> filesTrackedInCommit =
@@ -671,21 +1059,19 @@ public class Repository {
         }
 
         if (tracked) {
-            Utils.restrictedDelete(fileName);
+            deleteWorkingFile(fileName);
             if (!fileName.equals("k.txt")) {
-                currStage.getUntrackedFiles().put(fileName,
-                        currStage.getTrackedFiles().
-                                get(fileName));
+                currStage.addUntracked(fileName);
             }
 
             if (staged) {
-                currStage.getTrackedFiles().remove(fileName);
+                currStage.removeTracked(fileName);
             }
 
-            Utils.writeObject(_stageFile, currStage);
+            writeStage(currStage);
         } else if (staged) {
-            currStage.getTrackedFiles().remove(fileName);
-            Utils.writeObject(_stageFile, currStage);
+            currStage.removeTracked(fileName);
+            writeStage(currStage);
         } else {
             if (!isMerge) {
                 System.out.println("No reason to remove the file.");
@@ -758,27 +1144,16 @@ public class Repository {
             return;
         }
 
-        StagingArea currStage = Utils.readObject(_stageFile, StagingArea.class);
+        StagingArea currStage = readStage();
 
         System.out.println("=== Branches ===");
 
-        ArrayList<String> filesinBranches = new ArrayList<>(
-                Utils.plainFilenamesIn(_branches));
-        Collections.sort(filesinBranches);
-
-        for (String f : filesinBranches) {
-            if (!f.equals("HEAD.txt")
-                    && !f.equals("currBranchFileName.txt")
-                    && !f.equals("currBranchUID.txt")
-                    && !f.equals("currBranchObject.txt")
-                    && f.endsWith(".txt")) {
-                String theHEADContents = Utils.readContentsAsString(_head);
-                if (Utils.readContentsAsString(Utils.join(_branches, f)).
-                        equals(theHEADContents)) {
-                    System.out.print("*");
-                }
-                System.out.println(f.substring(0, f.length() - 4));
+        String current = _refs.current();
+        for (String branchName : _refs.branches().keySet()) {
+            if (branchName.equals(current)) {
+                System.out.print("*");
             }
+            System.out.println(branchName);
         }
 
         System.out.println();
@@ -790,20 +1165,201 @@ public class Repository {
         System.out.println();
 
         System.out.println("=== Removed Files ===");
-        for (String fileName : currStage.getUntrackedFiles().keySet()) {
+        for (String fileName : currStage.getUntrackedFiles()) {
             System.out.println(fileName);
         }
         System.out.println();
 
+        Commit currCommit = getCurrentCommit();
+        WorkTree tree = WorkTree.scan(CWD);
         System.out.println("=== Modifications Not Staged For Commit ===");
-
+        for (Map.Entry<String, String> modified : unstagedModifications(
+                currCommit, currStage, tree).entrySet()) {
+            System.out.println(modified.getKey()
+                    + " (" + modified.getValue() + ")");
+        }
         System.out.println();
 
         System.out.println("=== Untracked Files ===");
-
+        for (String fileName : untrackedFiles(currCommit, currStage, tree)) {
+            System.out.println(fileName);
+        }
         System.out.println();
     }
 
+    /** Finds tracked files whose working copies differ from what would
+     * be committed: files staged for addition whose contents changed or
+     * that were deleted, and files tracked in the current commit that
+     * were changed or deleted without being staged. Only files whose
+     * stat data changed since they were last hashed are read.
+     *
+     * @param currCommit current commit
+     * @param currStage current staging area
+     * @param tree snapshot of the working tree
+     * @return "modified" or "deleted" for each such file, sorted by name
+     * */
+    private TreeMap<String, String> unstagedModifications(
+            Commit currCommit, StagingArea currStage, WorkTree tree) {
+        TreeMap<String, String> result = new TreeMap<>();
+        TreeMap<String, ObjectId> expected = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> blob
+                : currCommit.getBlobs().entrySet()) {
+            if (!currStage.isUntracked(blob.getKey())) {
+                expected.put(blob.getKey(), blob.getValue());
+            }
+        }
+        expected.putAll(currStage.getTrackedFiles());
+
+        StatIndex index = readIndex();
+        for (Map.Entry<String, ObjectId> file : expected.entrySet()) {
+            WorkTree.Entry entry = tree.get(file.getKey());
+            if (entry == null) {
+                result.put(file.getKey(), "deleted");
+            } else if (!index.blobId(entry, _store).equals(file.getValue())) {
+                result.put(file.getKey(), "modified");
+            }
+        }
+        index.write();
+        return result;
+    }
+
+    /** Finds working files that are neither tracked in the current commit
+     * nor staged for addition, and files staged for removal that have
+     * been re-created.
+     *
+     * @param currCommit current commit
+     * @param currStage current staging area
+     * @param tree snapshot of the working tree
+     * @return names of untracked files, sorted
+     * */
+    private TreeSet<String> untrackedFiles(Commit currCommit,
+                                           StagingArea currStage,
+                                           WorkTree tree) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String fileName : tree.paths()) {
+            if (currStage.isUntracked(fileName)
+                    || (!currCommit.getBlobs().containsKey(fileName)
+                    && !currStage.isTracked(fileName))) {
+                result.add(fileName);
+            }
+        }
+        return result;
+    }
+
+    /** Shows, as unified diffs, the changes in one of three places:
+     * with no arguments, between the staged snapshot and the working
+     * tree; with --cached (or --staged), between the head commit and the
+     * staged snapshot; with two commit ids, between those commits.
+     *
+     * @param args the arguments after "diff"
+     * */
+
+    public void diff(String... args) {
+        if (!_gitletFolder.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        PrintStream out = new PrintStream(
+            new BufferedOutputStream(System.out, ObjectStore.BUFFER));
+        if (args.length == 0) {
+            diffWorking(out);
+        } else if (args.length == 1
+                && (args[0].equals("--cached") || args[0].equals("--staged"))) {
+            diffStaged(out);
+        } else if (args.length == 2) {
+            ObjectId fromUID = resolveCommit(args[0]);
+            ObjectId toUID = fromUID == null ? null : resolveCommit(args[1]);
+            if (toUID == null) {
+                return;
+            }
+            Commit from = readCommit(fromUID);
+            Commit to = readCommit(toUID);
+            for (Map.Entry<String, ObjectId> file : Tree.diff(_store,
+                    from.getTree(), to.getTree()).entrySet()) {
+                ObjectId oldBlob = from.getBlobs().get(file.getKey());
+                writeDiff(out, file.getKey(), oldBlob, file.getValue(),
+                    Diff.blobs(_store, oldBlob, file.getValue()));
+            }
+        } else {
+            System.out.println("Incorrect Operands");
+            return;
+        }
+        out.flush();
+    }
+
+    /** Writes the diff of each tracked file whose working copy differs
+     * from what would be committed to OUT.  As in status, only files
+     * whose stat data changed since they were last hashed are read.
+     *
+     * @param out where to write
+     * */
+    private void diffWorking(PrintStream out) {
+        StagingArea stage = readStage();
+        TreeMap<String, ObjectId> expected = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> blob
+                : getCurrentCommit().getBlobs().entrySet()) {
+            if (!stage.isUntracked(blob.getKey())) {
+                expected.put(blob.getKey(), blob.getValue());
+            }
+        }
+        expected.putAll(stage.getTrackedFiles());
+
+        WorkTree tree = WorkTree.scan(CWD);
+        StatIndex index = readIndex();
+        for (Map.Entry<String, ObjectId> file : expected.entrySet()) {
+            WorkTree.Entry entry = tree.get(file.getKey());
+            if (entry == null) {
+                writeDiff(out, file.getKey(), file.getValue(), null,
+                    Diff.blobs(_store, file.getValue(), null));
+            } else if (!index.blobId(entry, _store).equals(file.getValue())) {
+                writeDiff(out, file.getKey(), file.getValue(), file.getValue(),
+                    new Diff(Diff.Lines.read(_store, file.getValue()),
+                        Diff.Lines.read(entry.file())));
+            }
+        }
+        index.write();
+    }
+
+    /** Writes the diff of each file staged for addition or removal
+     * against the head commit to OUT.
+     *
+     * @param out where to write
+     * */
+    private void diffStaged(PrintStream out) {
+        StagingArea stage = readStage();
+        Commit head = getCurrentCommit();
+        TreeMap<String, ObjectId> changed = new TreeMap<>(
+            stage.getTrackedFiles());
+        for (String fileName : stage.getUntrackedFiles()) {
+            changed.put(fileName, null);
+        }
+        for (Map.Entry<String, ObjectId> file : changed.entrySet()) {
+            ObjectId oldBlob = head.getBlobs().get(file.getKey());
+            writeDiff(out, file.getKey(), oldBlob, file.getValue(),
+                Diff.blobs(_store, oldBlob, file.getValue()));
+        }
+    }
+
+    /** Writes DIFF, the changes to file FILENAME, to OUT under a header
+     * naming it, unless there are none.  OLDBLOB and NEWBLOB are null
+     * where the file is missing on that side.
+     *
+     * @param out where to write
+     * @param fileName file's name
+     * @param oldBlob the old version's UID, or null
+     * @param newBlob the new version's UID, or null
+     * @param diff the comparison of the two versions
+     * */
+    private void writeDiff(PrintStream out, String fileName, ObjectId oldBlob,
+                           ObjectId newBlob, Diff diff) {
+        if (diff.isEmpty() && oldBlob != null && newBlob != null) {
+            return;
+        }
+        out.println("diff --git a/" + fileName + " b/" + fileName);
+        diff.writeUnified(out, oldBlob == null ? "/dev/null" : "a/" + fileName,
+            newBlob == null ? "/dev/null" : "b/" + fileName);
+    }
+
     /** Creates a new branch with the given name, and points it at the current
      * head node. A branch is nothing more than
      * a name for a reference (a SHA-1 identifier) to a commit node.
@@ -817,14 +1373,13 @@ public class Repository {
      * */
 
     public void branch(String branchName) {
-        File currBranch = Utils.join(_branches, branchName + ".txt");
-
-        if (currBranch.exists()) {
+        if (_refs.contains(branchName)) {
             System.out.println("A branch with that name already exists.");
             return;
         }
 
-        Utils.writeContents(currBranch, Utils.readContentsAsString(_head));
+        _refs.set(branchName, _refs.head());
+        _refs.save();
     }
 
     /** Deletes the branch with the given name. This only means to delete the
@@ -836,21 +1391,18 @@ public class Repository {
      * */
 
     public void rmbranch(String branchName) {
-        File currBranch = Utils.join(_branches, branchName + ".txt");
-
-        if (!currBranch.exists()) {
+        if (!_refs.contains(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
 
-        File checkoutBranch = Utils.join(_branches, branchName + ".txt");
-        if (Utils.readContentsAsString(checkoutBranch).equals(Utils.
-                readContentsAsString(_head))) {
+        if (branchName.equals(_refs.current())) {
             System.out.println("Cannot remove the current branch.");
             return;
         }
 
-        currBranch.delete();
+        _refs.remove(branchName);
+        _refs.save();
     }
 
     /** Checks out all the files tracked by the given commit.
@@ -870,64 +1422,25 @@ public class Repository {
      * */
 
     public void reset(String commitUID) {
-        File wantedFile = Utils.join(_commitDir, commitUID + ".txt");
         Commit wantedCommit = null;
-        StagingArea currStage = Utils.readObject(_stageFile, StagingArea.class);
+        StagingArea currStage = readStage();
+        ObjectId wantedUID = resolveCommit(commitUID);
 
-        if (!wantedFile.exists()) {
-            System.out.println("No commit with that id exists.");
+        if (wantedUID == null) {
             return;
         } else {
-            wantedCommit = Utils.readObject(wantedFile, Commit.class);
+            wantedCommit = readCommit(wantedUID);
         }
         Commit currCommit = getCurrentCommit();
-
-        ArrayList<File> filesInCWD = new ArrayList<>();
-        for (File f : CWD.listFiles()) {
-            if (f.getName().endsWith(".txt")) {
-                filesInCWD.add(f);
-            }
-        }
-        if (filesInCWD.contains(Utils.join(CWD, "m.txt"))) {
-            filesInCWD.remove(Utils.join(CWD, "h.txt"));
-        }
-
-        for (File f : filesInCWD) {
-            if (wantedCommit.getBlobs().containsKey(f.getName())
-                    && !currStage.getTrackedFiles().containsKey(f.getName())
-                    && !currCommit.getBlobs().containsKey(f.getName())) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (File file : filesInCWD) {
-            String fileName = file.getName().
-                    substring(0, file.getName().length() - 4);
-            if (!wantedCommit.getBlobs().containsKey(fileName)
-                    && currCommit.getBlobs().containsKey(fileName)) {
-                rm(fileName, false);
-            }
-        }
-
-        ArrayList<String> wantedCommitBlobs = new ArrayList<>(wantedCommit.
-                getBlobs().keySet());
-        for (String fileName : wantedCommitBlobs) {
-            if (currCommit.getBlobs().containsKey(fileName)) {
-                checkoutFile(fileName);
-            }
+        if (!checkoutCommitTree(currCommit, wantedCommit, currStage)) {
+            return;
         }
 
-        Utils.writeContents(_head, commitUID);
-        currBranchUpdater("master");
-        Utils.writeContents(Utils.join(_branches,
-                Utils.readContentsAsString(
-                        currBranchFileNameInstanceVar)
-                        + ".txt"), commitUID);
+        _refs.set(_refs.current(), wantedUID);
+        _refs.save();
 
         currStage.clear();
-        Utils.writeObject(_stageFile, currStage);
+        writeStage(currStage);
     }
 
     /**
@@ -943,19 +1456,42 @@ public class Repository {
      */
 
     public void find(String commitMessage) {
-        boolean commitExists = false;
-        File[] commitList = _commitDir.listFiles();
-        for (File commit : commitList) {
-            Commit c = Utils.readObject(commit, Commit.class);
-            if (c.getMessage().equals(commitMessage)) {
-                commitExists = true;
-                System.out.println(c.getUID());
+        printFound(messages().find(commitMessage));
+    }
+
+    /** Prints out the ids of all commits whose message contains the
+     * given text (--contains) or in which the given regular expression
+     * finds a match (--regex), one per line. Neither search reads the
+     * commits themselves; both go through the message index.
+     *
+     * @param option --contains or --regex
+     * @param query text or regular expression to look for
+     */
+
+    public void find(String option, String query) {
+        if (option.equals("--contains")) {
+            printFound(messages().containing(query));
+        } else if (option.equals("--regex")) {
+            try {
+                printFound(messages().matching(Pattern.compile(query)));
+            } catch (PatternSyntaxException excp) {
+                System.out.println("Invalid regular expression.");
             }
+        } else {
+            System.out.println("Incorrect Operands");
         }
+    }
 
-        if (!commitExists) {
+    /** Prints the ids of the commits found by find, one per line.
+     *
+     * @param found ids of the commits found
+     * */
+    private void printFound(List<ObjectId> found) {
+        for (ObjectId id : found) {
+            System.out.println(id);
+        }
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
-            return;
         }
     }
 
@@ -1044,28 +1580,22 @@ public class Repository {
 
     public void merge(String givenBranchName) {
         boolean fileConflict = false;
-        StagingArea currStage = Utils.readObject(
-                _stageFile, StagingArea.class);
+        StagingArea currStage = readStage();
         if (mergeExceptions(givenBranchName)) {
             return;
         }
-        ArrayList<File> theCWDFiles = new ArrayList<>();
-        mergeGetCWDFiles(theCWDFiles);
-        String givenBranchCommitUID = Utils.readContentsAsString(
-                Utils.join(_branches, givenBranchName + ".txt"));
-        Commit givenBranchCommit = Utils.readObject(
-                Utils.join(_commitDir, givenBranchCommitUID
-                        + ".txt"), Commit.class);
+        ObjectId givenBranchCommitUID = _refs.get(givenBranchName);
+        Commit givenBranchCommit = readCommit(givenBranchCommitUID);
         Commit currentBranchCommit = getCurrentCommit();
-        HashMap<String, Commit> currentCommitMapper = new HashMap<>();
-        Commit currentCommitPointer = currentBranchCommit;
-        Commit givenCommitPointer = givenBranchCommit;
-        Commit splitPoint = null;
-        mergeUntrackedFileException(theCWDFiles,
-                currentBranchCommit, givenBranchCommit);
-        splitPoint = mergeBacktraceBranchesAndExceptions(currentCommitPointer,
-                currentCommitMapper, givenCommitPointer, splitPoint,
+        if (mergeUntrackedFileException(currentBranchCommit,
+                givenBranchCommit, currStage)) {
+            return;
+        }
+        Commit splitPoint = mergeBacktraceBranchesAndExceptions(
                 currentBranchCommit, givenBranchCommitUID);
+        if (splitPoint == null) {
+            return;
+        }
         fileConflict = mergeConditionHandling(currentBranchCommit,
                 givenBranchCommit, splitPoint, givenBranchCommitUID,
                 currStage, fileConflict);
@@ -1076,13 +1606,13 @@ public class Repository {
                     && !currentBranchCommit.getBlobs().containsKey(fileName)) {
                 File addFile = Utils.join(CWD, fileName);
                 if (!addFile.exists()) {
-                    String newUID = givenBranchCommit.getBlobs().get(fileName);
+                    ObjectId newUID =
+                            givenBranchCommit.getBlobs().get(fileName);
                     Utils.writeContents(addFile,
-                            Utils.readContentsAsString(
-                                    Utils.join(_blobs, newUID + ".txt")));
+                            readBlob(newUID));
                 }
                 add(fileName, true);
-                Utils.writeObject(_stageFile, currStage);
+                writeStage(currStage);
                 if (fileName.equals("g.txt")
                         && !Utils.readContentsAsString(
                         Utils.join(CWD, "g.txt")).equals(
@@ -1095,12 +1625,11 @@ public class Repository {
         mergeAddRemoveForLoops(splitPoint, givenBranchCommit,
                 currentBranchCommit, fileConflict,
                 givenBranchName, givenBranchCommitUID);
-        Commit newCurrentBranchCommit = getCurrentCommit();
-        newCurrentBranchCommit.getParentUID().add(
-                givenBranchCommit.getParentUID().get(0));
+        for (String fileName : mergeConflictFiles) {
+            add(fileName, true);
+        }
         commit("Merged " + givenBranchName + " into "
-                + Utils.readContentsAsString(currBranchFileNameInstanceVar)
-                + ".", true);
+                + _refs.current() + ".", true, givenBranchCommitUID);
     }
 
     /** Merge() method's condition handling (large for loop).
@@ -1117,23 +1646,25 @@ public class Repository {
     public boolean mergeConditionHandling(Commit currentBranchCommit,
                                           Commit givenBranchCommit,
                                           Commit splitPoint,
-                                          String givenBranchCommitUID,
+                                          ObjectId givenBranchCommitUID,
                                           StagingArea currStage,
                                           boolean fileConflict) {
         for (String fileName : currentBranchCommit.getBlobs().keySet()) {
-            String givenBlobUID = givenBranchCommit.getBlobs().get(fileName);
-            String currentBlobUID = currentBranchCommit.
+            ObjectId givenBlobUID = givenBranchCommit.getBlobs().get(fileName);
+            ObjectId currentBlobUID = currentBranchCommit.
                     getBlobs().get(fileName);
 
             if (splitPoint.getBlobs().containsKey(fileName)
                     && givenBranchCommit.getBlobs().containsKey(fileName)) {
-                String splitPointBlobUID = splitPoint.getBlobs().get(fileName);
+                ObjectId splitPointBlobUID =
+                        splitPoint.getBlobs().get(fileName);
 
                 if (!splitPointBlobUID.equals(givenBlobUID)
                         && splitPointBlobUID.equals(currentBlobUID)) {
-                    checkoutCommitIDAndFile(givenBranchCommitUID, fileName);
+                    checkoutCommitIDAndFile(givenBranchCommitUID.name(),
+                            fileName);
                     add(fileName, false);
-                    Utils.writeObject(_stageFile, currStage);
+                    writeStage(currStage);
                 }
 
                 if (!splitPointBlobUID.equals(givenBlobUID)
@@ -1189,7 +1720,7 @@ public class Repository {
                                        Commit currentBranchCommit,
                                        boolean fileConflict,
                                        String givenBranchName,
-                                       String givenBranchCommitUID) {
+                                       ObjectId givenBranchCommitUID) {
         ArrayList<String> splitPointBlobs =
                 new ArrayList<>(splitPoint.getBlobs().keySet());
         ArrayList<String> givenBranchBlobs =
@@ -1221,94 +1752,51 @@ public class Repository {
         for (String fileName : givenBranchBlobs) {
             if (!splitPointBlobs.contains(fileName)) {
                 if (!splitPointBlobs.isEmpty()) {
-                    checkoutCommitIDAndFile(givenBranchCommitUID, fileName);
+                    checkoutCommitIDAndFile(givenBranchCommitUID.name(),
+                            fileName);
                 }
                 add(fileName, true);
             }
         }
-        if (splitPointBlobs.isEmpty()) {
-            for (String fileName : givenBranchBlobs) {
-                if (!splitPointBlobs.contains(fileName)
-                        && !currentBranchBlobs.contains(fileName)
-                        && givenBranchBlobs.contains(fileName)) {
-                    rm(fileName, true);
-                }
-            }
-        }
         for (String fileName : splitPointBlobs) {
             if (currentBranchCommit.getBlobs().containsKey(fileName)) {
                 if (splitPoint.getBlobs().get(fileName).equals(
                         currentBranchCommit.getBlobs().get(fileName))
                         && !givenBranchBlobs.contains(fileName)) {
                     rm(fileName, true);
-                    Utils.restrictedDelete(Utils.join(CWD, fileName));
+                    deleteWorkingFile(fileName);
                 }
             }
         }
     }
 
     /** Merge() method handling branch backtracing (to find split point)
-     * and some exceptions.
+     * and some exceptions. The split point is a best common ancestor
+     * found by MergeBase, which follows every parent through the commit
+     * graph.  In a criss-cross history there are several; they are not
+     * merged into a virtual ancestor as Git does, but the one with the
+     * highest generation, then the latest, is used.
      *
-     * @param currentCommitPointer current commit's pointer
-     * @param currentCommitMapper current commit's mapper hashmap (UID, commit)
-     * @param givenCommitPointer given commit's pointer
-     * @param splitPoint split point
      * @param currentBranchCommit current branch's commit
      * @param givenBranchCommitUID given branch's commit UID
      *
-     * @return split point
+     * @return split point, or null if none could be found
      */
     public Commit mergeBacktraceBranchesAndExceptions(
-            Commit currentCommitPointer,
-            HashMap<String, Commit> currentCommitMapper,
-            Commit givenCommitPointer, Commit splitPoint,
-            Commit currentBranchCommit, String givenBranchCommitUID) {
-        Commit currentCommitPointerNew = Utils.readObject(
-                Utils.join(_commitDir, currentCommitPointer.getUID()
-                        + ".txt"), Commit.class);
-        Commit currentParentCommitPointer;
-        while (currentCommitPointer != null
-                && currentCommitPointerNew != null) {
-            currentCommitMapper.put(currentCommitPointer.getUID(),
-                    Utils.readObject(Utils.join(_commitDir,
-                                    currentCommitPointer.getUID() + ".txt"),
-                            Commit.class));
-
-            if (currentCommitPointer.getParentUID().get(0) != null) {
-                currentParentCommitPointer = Utils.readObject(
-                        Utils.join(_commitDir, currentCommitPointer.
-                                getParentUID().get(0) + ".txt"), Commit.class);
-            } else {
-                currentParentCommitPointer = null;
-            }
-            currentCommitPointer = currentParentCommitPointer;
-        }
-
-        Commit givenCommitPointerNew = Utils.readObject(
-                Utils.join(_commitDir, givenCommitPointer.getUID()
-                        + ".txt"), Commit.class);
-        while (givenCommitPointer != null && givenCommitPointerNew != null) {
-            if (currentCommitMapper.containsKey(givenCommitPointer.getUID())) {
-                splitPoint = currentCommitMapper.get(
-                        givenCommitPointer.getUID());
-                break;
-            }
-
-            givenCommitPointer = Utils.readObject(
-                    Utils.join(_commitDir,
-                            givenCommitPointer.getParentUID().get(0)
-                                    + ".txt"), Commit.class);
-        }
+            Commit currentBranchCommit, ObjectId givenBranchCommitUID) {
+        List<ObjectId> bases = new MergeBase(graph()).bases(
+                currentBranchCommit.getUID(), givenBranchCommitUID);
 
-
-        if (splitPoint == null) {
+        if (bases.isEmpty()) {
             System.out.println("There was an error finding the split point.");
+            return null;
         }
+        Commit splitPoint = readCommit(bases.get(0));
         if (splitPoint.getUID().equals(currentBranchCommit.getUID())) {
-            Utils.writeContents(_head, givenBranchCommitUID);
+            _refs.set(_refs.current(), givenBranchCommitUID);
+            _refs.save();
             System.out.println("Current branch fast-forwarded.");
-        } else if (currentCommitMapper.containsKey(givenBranchCommitUID)) {
+        } else if (splitPoint.getUID().equals(givenBranchCommitUID)) {
             System.out.println("Given branch is an ancestor "
                     + "of the current branch.");
         }
@@ -1318,21 +1806,22 @@ public class Repository {
 
     /** Merge() method's untracked file exception handling.
      *
-     * @param theCWDFiles current working directory's files
      * @param currentBranchCommit current branch's commit
      * @param givenBranchCommit given branch's commit
+     * @param currStage current stage
+     * @return true iff an untracked file is in the way
      */
-    public void mergeUntrackedFileException(ArrayList<File> theCWDFiles,
-                                            Commit currentBranchCommit, Commit givenBranchCommit) {
-        for (File file : theCWDFiles) {
-            if (!currentBranchCommit.getBlobs().containsKey(file.getName())
-                    && (givenBranchCommit.getBlobs().
-                    containsKey(file.getName()))) {
+    public boolean mergeUntrackedFileException(Commit currentBranchCommit,
+            Commit givenBranchCommit, StagingArea currStage) {
+        for (String fileName : untrackedFiles(currentBranchCommit,
+                currStage, WorkTree.scan(CWD))) {
+            if (givenBranchCommit.getBlobs().containsKey(fileName)) {
                 System.out.println("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
-                return;
+                return true;
             }
         }
+        return false;
     }
 
     /** Handles merge for FILL THIS IN.
@@ -1345,36 +1834,21 @@ public class Repository {
 
     public boolean mergeExceptions(String branchName) {
         boolean result = false;
-        StagingArea currStage = Utils.readObject(_stageFile, StagingArea.class);
-        File branchFile = Utils.join(_branches, branchName + ".txt");
+        StagingArea currStage = readStage();
 
-        if (!currStage.getTrackedFiles().isEmpty()
-                || !currStage.getUntrackedFiles().isEmpty()) {
+        if (!currStage.isEmpty()) {
             System.out.println("You have uncommited changes.");
             result = true;
-        } else if (!branchFile.exists()) {
+        } else if (!_refs.contains(branchName)) {
             System.out.println("A branch with that name does not exist.");
             result = true;
-        } else if (branchName.equals(
-                Utils.readContentsAsString(currBranchFileNameInstanceVar))) {
+        } else if (branchName.equals(_refs.current())) {
             System.out.println("Cannot merge a branch with itself.");
             result = true;
         }
         return result;
     }
 
-    /** Merge() method's handling of getting CWD files.
-     *
-     * @param theCWDFiles current working directory files
-     */
-    public void mergeGetCWDFiles(ArrayList<File> theCWDFiles) {
-        for (File file : CWD.listFiles()) {
-            if (file.getName().endsWith(".txt")) {
-                theCWDFiles.add(file);
-            }
-        }
-    }
-
     /** Handles merge for file conflicts when given branch's UID is empty.
      *
      * Rule(s): 8 (????)
@@ -1385,11 +1859,11 @@ public class Repository {
      * */
 
     public void mergeFilesDifferentBetweenBranchesOneEmpty(
-            String currentCommitUID, String fileName, String givenCommitUID) {
+            ObjectId currentCommitUID, String fileName,
+            ObjectId givenCommitUID) {
         File mergeFile = Utils.join(CWD, fileName);
 
-        byte[] blobBytes = Utils.readContents(
-                Utils.join(_blobs, currentCommitUID + ".txt"));
+        byte[] blobBytes = readBlob(currentCommitUID);
         byte[] vals = concat("<<<<<<< HEAD\n".getBytes(
                 StandardCharsets.UTF_8), blobBytes);
 
@@ -1397,6 +1871,7 @@ public class Repository {
         vals = concat(vals, ">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
 
         Utils.writeContents(mergeFile, vals);
+        mergeConflictFiles.add(fileName);
     }
 
     /** Handles merge for file conflicts when given branch's UID is not empty.
@@ -1409,13 +1884,12 @@ public class Repository {
      * */
 
     public void mergeFilesDifferentBetweenBranchesNoneEmpty(
-            String currentCommitUID, String fileName, String givenCommitUID) {
+            ObjectId currentCommitUID, String fileName,
+            ObjectId givenCommitUID) {
         File mergeFile = Utils.join(CWD, fileName);
 
-        byte[] currentBlobBytes = Utils.readContents(
-                Utils.join(_blobs, currentCommitUID + ".txt"));
-        byte[] givenBlobBytes = Utils.readContents(
-                Utils.join(_blobs, givenCommitUID + ".txt"));
+        byte[] currentBlobBytes = readBlob(currentCommitUID);
+        byte[] givenBlobBytes = readBlob(givenCommitUID);
 
         byte[] vals = concat("<<<<<<< HEAD\n".getBytes(
                 StandardCharsets.UTF_8), currentBlobBytes);
@@ -1425,6 +1899,7 @@ public class Repository {
         vals = concat(vals, ">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
 
         Utils.writeContents(mergeFile, vals);
+        mergeConflictFiles.add(fileName);
     }
 
     /** Concatenates new array to old array (used in merge).
@@ -1442,24 +1917,160 @@ public class Repository {
     }
 
     /** Like log, except displays information about all commits ever made.
-     * The order of the commits does not matter.
-     * Hint: there is a useful method in gitlet.Utils that will help you
-     * iterate over files within a directory. */
+     * The order of the commits does not matter. The entries are copied
+     * from the commit journal, which each commit appends to, so no
+     * commit is read. */
 
     public void globalLog() {
-        ArrayList<String> allCommitUIDtxts =
-                new ArrayList<>(Utils.plainFilenamesIn(_commitDir));
+        finishCommit();
+        _journal.copyTo(System.out, _store);
+    }
 
-        for (String commitUIDtxt : allCommitUIDtxts) {
-            Commit currCommit = Utils.readObject(
-                    Utils.join(_commitDir, commitUIDtxt), Commit.class);
+    /** Consolidates every loose commit and blob into a new pack, so
+     * that later lookups need one memory-mapped index search instead of
+     * one file per object. Older versions of each file are stored as
+     * deltas against newer ones. */
 
-            System.out.println("===");
-            System.out.println("commit " + currCommit.getUID());
-            System.out.println("Date: " + currCommit.getTimestamp());
-            System.out.println(currCommit.getMessage());
-            System.out.println("");
+    public void gc() {
+        if (!_gitletFolder.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
         }
+        _store.repack(pathVersions());
+    }
+
+    /** Converts a repository made by an older version of gitlet to the
+     * current layout. Commits saved with Java serialization are rewritten
+     * in the current encoding, and a serialized staging area as a table.
+     * Loose objects of a repository created before objects were sharded
+     * move into two-digit subdirectories of commits/ and blobs/, and the
+     * branch files of one created before refs were packed go into the
+     * refs file. Repositories already in the current layout are left as
+     * they are. */
+
+    public void migrate() {
+        if (!_gitletFolder.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        convertSerializedCommits();
+        _store.shard();
+        _refs.save();
+        writeStage(readStage());
+    }
+
+    /** Rewrites every commit saved with Java serialization in the current
+     * encoding, parents first, and points the branches at the rewritten
+     * commits. Since a commit's UID is the hash of its encoding, each gets
+     * a new UID. The refs are saved before the old commits are deleted,
+     * and rewriting gives the same UIDs every time, so if this is
+     * interrupted, running it again finishes the job. */
+    private void convertSerializedCommits() {
+        HashMap<ObjectId, LegacyFormat.SerializedCommit> serialized =
+                new HashMap<>();
+        for (ObjectId id : _store.ids(ObjectStore.COMMIT)) {
+            byte[] data = _store.read(id);
+            if (LegacyFormat.isSerialized(data)) {
+                serialized.put(id, LegacyFormat.readCommit(data));
+            }
+        }
+        if (serialized.isEmpty()) {
+            return;
+        }
+        HashMap<ObjectId, ObjectId> converted = new HashMap<>();
+        for (ObjectId id : serialized.keySet()) {
+            ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+            pending.push(id);
+            while (!pending.isEmpty()) {
+                ObjectId next = pending.peek();
+                if (converted.containsKey(next)) {
+                    pending.pop();
+                    continue;
+                }
+                LegacyFormat.SerializedCommit old = serialized.get(next);
+                ArrayList<ObjectId> parents = new ArrayList<>();
+                boolean ready = true;
+                for (String parentName : old.parents()) {
+                    ObjectId parent = ObjectId.parse(parentName);
+                    if (parent == null || !serialized.containsKey(parent)) {
+                        throw new IllegalArgumentException("commit " + next
+                                + " has a missing parent " + parentName);
+                    }
+                    if (!converted.containsKey(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                    parents.add(converted.get(parent));
+                }
+                if (ready) {
+                    converted.put(next, convertCommit(old, parents));
+                    pending.pop();
+                }
+            }
+        }
+        for (Map.Entry<String, ObjectId> branch
+                : new TreeMap<>(_refs.branches()).entrySet()) {
+            ObjectId id = converted.get(branch.getValue());
+            if (id != null) {
+                _refs.set(branch.getKey(), id);
+            }
+        }
+        _refs.save();
+        for (ObjectId id : serialized.keySet()) {
+            _store.deleteLoose(id, ObjectStore.COMMIT);
+        }
+        _graph.rebuild(_store);
+        _messages.rebuild(_store);
+        _journal.rebuild(_store);
+    }
+
+    /** Stores OLD, a commit saved with Java serialization, in the current
+     * encoding, with its files as a tree.
+     *
+     * @param old the serialized commit
+     * @param parents UIDs of its parents, already converted
+     * @return the UID of the converted commit
+     * */
+    private ObjectId convertCommit(LegacyFormat.SerializedCommit old,
+                                   List<ObjectId> parents) {
+        HashMap<String, ObjectId> blobs = new HashMap<>();
+        for (Map.Entry<String, String> blob : old.blobs().entrySet()) {
+            ObjectId id = ObjectId.parse(blob.getValue());
+            if (id == null || !_store.contains(id)) {
+                throw new IllegalArgumentException("missing blob "
+                        + blob.getValue() + " for " + blob.getKey());
+            }
+            blobs.put(blob.getKey(), id);
+        }
+        return new Commit(old.message(), old.time(),
+                Tree.write(_store, blobs), parents).getUID();
+    }
+
+    /** Walks the history of every branch, newest commit first, and
+     * collects the versions of each file in the order they are met.
+     *
+     * @return blob UIDs of each file's versions, newest first
+     * */
+    private ArrayList<List<ObjectId>> pathVersions() {
+        HashMap<String, LinkedHashSet<ObjectId>> versions = new HashMap<>();
+        HashSet<ObjectId> visited = new HashSet<>();
+        for (ObjectId head : _refs.branches().values()) {
+            ObjectId commitUID = head;
+            while (commitUID != null && visited.add(commitUID)) {
+                Commit commit = readCommit(commitUID);
+                for (Map.Entry<String, ObjectId> blob
+                        : commit.getBlobs().entrySet()) {
+                    versions.computeIfAbsent(blob.getKey(),
+                        k -> new LinkedHashSet<>()).add(blob.getValue());
+                }
+                commitUID = commit.getParentUID().get(0);
+            }
+        }
+        ArrayList<List<ObjectId>> result = new ArrayList<>();
+        for (LinkedHashSet<ObjectId> ids : versions.values()) {
+            result.add(new ArrayList<>(ids));
+        }
+        return result;
     }
 
 }
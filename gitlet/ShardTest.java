@@ -0,0 +1,50 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Tests of migrating loose objects into shard directories.
+ *  @author Janani Sriram
+ */
+public class ShardTest {
+
+    /** Loose objects of a store that predates sharding move into their
+     *  shard directories and still read back, also after a second
+     *  migration and from a freshly opened store. */
+    @Test
+    public void shardMovesLooseObjects() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ObjectStore flat = new ObjectStore(dir);
+            byte[] commit = "a commit".getBytes(StandardCharsets.UTF_8);
+            byte[] blob = "a blob".getBytes(StandardCharsets.UTF_8);
+            ObjectId commitId = ObjectId.hash(commit);
+            ObjectId blobId = ObjectId.hash(blob);
+            flat.write(commitId, ObjectStore.COMMIT, commit);
+            flat.write(blobId, ObjectStore.BLOB, blob);
+            File blobs = new File(dir, "blobs");
+            assertTrue(new File(blobs, blobId.name() + ".txt").isFile());
+
+            flat.shard();
+            flat.shard();
+            assertFalse(new File(blobs, blobId.name() + ".txt").exists());
+            File shard = new File(blobs,
+                blobId.name().substring(0, ObjectStore.SHARD_DIGITS));
+            assertTrue(new File(shard, blobId.name()
+                .substring(ObjectStore.SHARD_DIGITS) + ".txt").isFile());
+            assertTrue(new File(dir, ObjectStore.SHARDED_MARKER).exists());
+
+            ObjectStore sharded = new ObjectStore(dir);
+            assertArrayEquals(commit, sharded.read(commitId));
+            assertArrayEquals(blob, sharded.read(blobId));
+            assertEquals(1, sharded.ids(ObjectStore.COMMIT).size());
+            assertEquals(1, sharded.ids(ObjectStore.BLOB).size());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
@@ -1,28 +1,149 @@
 package gitlet;
 
-import java.io.Serializable;
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
 
 /** StagingArea class.
+ *
+ * Files staged for addition ("tracked", with the UID of the staged
+ * blob) or for removal ("untracked") are kept in staging/stage, a sorted
+ * table of fixed-size records that is memory-mapped and searched in
+ * place, so looking up a file never decodes the table.  Staging a file
+ * appends one record to the log staging/stage.log instead of rewriting
+ * the table; the log is read when the stage is opened, and is folded
+ * into a new table once it holds LOG_LIMIT records.
+ *
+ * The table is a header (magic, version, generation, record count,
+ * length of the name area, CRC-32 of the body, CRC-32 of the header
+ * before it), the records sorted by the UTF-8 bytes of their file
+ * names, and the name area.  A record holds the offset and length of
+ * its name in the name area, its kind and a raw 20-byte UID.  The
+ * header checksum is verified whenever the table is opened, and the
+ * body checksum whenever the whole table is read.
+ *
+ * The log is a header (magic and the generation of the table it
+ * applies to) followed by records, each a kind, a length-prefixed name,
+ * a raw UID and a CRC-32 of the record.  A log whose generation is not
+ * the table's is stale and ignored, and a torn last record is dropped,
+ * so a table replaced by rename (when a commit clears the stage, say)
+ * is never combined with the wrong log.
+ *
+ * Writing a StagingArea makes the stored stage equal to it.  If the
+ * stored stage changed after this one was read, the table is rewritten
+ * as a whole rather than appended to.
  * @author Janani Sriram
  * */
 
-public class StagingArea implements Serializable {
+public class StagingArea {
 
-    /** Tracked files. */
-    private HashMap<String, String> trackedFiles;
+    /** Magic number opening the table ("GSTG"). */
+    static final int MAGIC = 0x47535447;
 
-    /** Modified files. */
-    private HashMap<String, String> modifiedFiles;
+    /** Magic number opening the log ("GSLG"). */
+    static final int LOG_MAGIC = 0x47534c47;
 
-    /** Untracked files. */
-    private HashMap<String, String> untrackedFiles;
+    /** Current version of the table format. */
+    static final int FORMAT_VERSION = 2;
 
-    /** StagingArea constructor. */
-    public StagingArea() {
-        trackedFiles = new HashMap<>();
-        modifiedFiles = new HashMap<>();
-        untrackedFiles = new HashMap<>();
+    /** Size of the table header in bytes. */
+    static final int HEADER = 32;
+
+    /** Size of a table record in bytes. */
+    static final int RECORD = 32;
+
+    /** Size of the log header in bytes. */
+    static final int LOG_HEADER = 12;
+
+    /** Number of log records that triggers rewriting the table. */
+    static final int LOG_LIMIT = 1024;
+
+    /** Kind of an entry that stages nothing, cancelling a table
+     *  record. */
+    static final int NONE = 0;
+
+    /** Kind of a file staged for addition. */
+    static final int TRACKED = 1;
+
+    /** Kind of a file staged for removal. */
+    static final int UNTRACKED = 2;
+
+    /** The table. */
+    private final File _file;
+
+    /** The log. */
+    private final File _log;
+
+    /** Staging area file written before the table existed. */
+    private final File _legacy;
+
+    /** The mapped table, or null if it is empty or not in use. */
+    private MappedByteBuffer _table;
+
+    /** Number of records in _table. */
+    private int _count;
+
+    /** Generation of the table this stage was read from. */
+    private long _generation;
+
+    /** Length of the valid part of the log when read, 0 if none. */
+    private long _logLength;
+
+    /** Number of records in the log when read. */
+    private int _logRecords;
+
+    /** Entries overriding those of the table, by file name. */
+    private final TreeMap<String, Entry> _overlay = new TreeMap<>();
+
+    /** Names of the files changed since the stage was read or
+     *  written. */
+    private final LinkedHashSet<String> _changed = new LinkedHashSet<>();
+
+    /** True iff the stored stage must be rewritten as a whole. */
+    private boolean _rewrite;
+
+    /** Every staged entry, by name; null until needed. */
+    private TreeMap<String, Entry> _entries;
+
+    /** StagingArea constructor: reads the stage kept in directory DIR.
+     *
+     * @param dir staging directory
+     * */
+    public StagingArea(File dir) {
+        _file = Utils.join(dir, "stage");
+        _log = Utils.join(dir, "stage.log");
+        _legacy = Utils.join(dir, "stage.txt");
+        if (_file.isFile()) {
+            openTable();
+            readLog();
+        } else if (_legacy.isFile()) {
+            readLegacy(Utils.readContents(_legacy));
+            _rewrite = true;
+        } else {
+            _generation = -1;
+            _rewrite = true;
+        }
     }
 
     /** Adds tracked files.
@@ -32,63 +153,510 @@ public class StagingArea implements Serializable {
      *
      */
 
-    public void addTracked(String fileName, String thisUID) {
-        trackedFiles.put(fileName, thisUID);
+    public void addTracked(String fileName, ObjectId thisUID) {
+        put(fileName, new Entry(TRACKED, thisUID));
     }
 
-    /** Adds modified files.
+    /** Adds untracked files.
      *
      * @param fileName file name
-     * @param thisUID UID
      *
      */
-    public void addModified(String fileName, String thisUID) {
-        modifiedFiles.put(fileName, thisUID);
+    public void addUntracked(String fileName) {
+        put(fileName, new Entry(UNTRACKED, null));
     }
 
-    /** Adds untracked files.
+    /** Unstages a file staged for addition.
      *
      * @param fileName file name
-     * @param thisUID UID
+     * */
+    public void removeTracked(String fileName) {
+        if (isTracked(fileName)) {
+            put(fileName, new Entry(NONE, null));
+        }
+    }
+
+    /** Unstages a file staged for removal.
      *
-     */
-    public void addUntracked(String fileName, String thisUID) {
-        untrackedFiles.put(fileName, thisUID);
+     * @param fileName file name
+     * */
+    public void removeUntracked(String fileName) {
+        if (isUntracked(fileName)) {
+            put(fileName, new Entry(NONE, null));
+        }
+    }
+
+    /** Tells whether a file is staged for addition.
+     *
+     * @param fileName file name
+     * @return true iff it is
+     * */
+    public boolean isTracked(String fileName) {
+        return find(fileName).kind() == TRACKED;
+    }
+
+    /** Tells whether a file is staged for removal.
+     *
+     * @param fileName file name
+     * @return true iff it is
+     * */
+    public boolean isUntracked(String fileName) {
+        return find(fileName).kind() == UNTRACKED;
+    }
+
+    /** Tells whether nothing is staged.
+     *
+     * @return true iff nothing is staged
+     * */
+    public boolean isEmpty() {
+        return entries().isEmpty();
     }
 
     /** Clears staging area. */
 
     public void clear() {
-        trackedFiles = new HashMap<>();
-        modifiedFiles = new HashMap<>();
-        untrackedFiles = new HashMap<>();
+        _table = null;
+        _count = 0;
+        _overlay.clear();
+        _changed.clear();
+        _entries = null;
+        _rewrite = true;
     }
 
     /** Gets tracked files.
      *
-     * @return trackedFiles
+     * @return UIDs of the files staged for addition, by name
      * */
 
-    public HashMap<String, String> getTrackedFiles() {
-        return trackedFiles;
+    public SortedMap<String, ObjectId> getTrackedFiles() {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            if (entry.getValue().kind() == TRACKED) {
+                result.put(entry.getKey(), entry.getValue().blob());
+            }
+        }
+        return Collections.unmodifiableSortedMap(result);
     }
 
-    /** Gets modified files.
+    /** Gets untracked files.
      *
-     * @return modifiedFiles
+     * @return names of the files staged for removal
      * */
 
-    public HashMap<String, String> getModifiedFiles() {
-        return modifiedFiles;
+    public SortedSet<String> getUntrackedFiles() {
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            if (entry.getValue().kind() == UNTRACKED) {
+                result.add(entry.getKey());
+            }
+        }
+        return Collections.unmodifiableSortedSet(result);
     }
 
-    /** Gets untracked files.
+    /** Makes the stored stage equal to this one, appending the changes
+     * to the log when the stored stage is still the one this was read
+     * from, and rewriting the table otherwise. */
+    public void write() {
+        long generation = storedGeneration();
+        if (!_rewrite && generation == _generation
+                && logLength(generation) == _logLength) {
+            if (_changed.isEmpty()) {
+                return;
+            }
+            if (_logRecords + _changed.size() <= LOG_LIMIT) {
+                appendLog();
+                return;
+            }
+        }
+        File tmp = Transaction.tempFile(_file.getParentFile());
+        try {
+            Files.write(tmp.toPath(), encode(generation + 1));
+            Files.move(tmp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        written(generation + 1);
+        _log.delete();
+        _legacy.delete();
+    }
+
+    /** Schedules rewriting the stored stage as this one when TXN
+     * commits. The old log is left in place, stale, until the next
+     * write, so that the stage is intact if TXN fails.
      *
-     * @return untrackedFiles
+     * @param txn transaction to write in
      * */
+    public void write(Transaction txn) {
+        long generation = storedGeneration();
+        txn.writeRef(_file, encode(generation + 1));
+        written(generation + 1);
+    }
+
+    /** Records that the table was rewritten as this stage, with
+     * generation GENERATION. */
+    private void written(long generation) {
+        TreeMap<String, Entry> entries = entries();
+        _table = null;
+        _count = 0;
+        _overlay.clear();
+        _overlay.putAll(entries);
+        _changed.clear();
+        _generation = generation;
+        _logLength = 0;
+        _logRecords = 0;
+        _rewrite = false;
+    }
+
+    /** Stages ENTRY under FILENAME. */
+    private void put(String fileName, Entry entry) {
+        _overlay.put(fileName, entry);
+        _changed.add(fileName);
+        _entries = null;
+    }
+
+    /** Returns the entry staged under FILENAME, of kind NONE if there
+     *  is none. */
+    private Entry find(String fileName) {
+        Entry entry = _overlay.get(fileName);
+        if (entry != null) {
+            return entry;
+        }
+        int i = search(fileName.getBytes(StandardCharsets.UTF_8));
+        return i < 0 ? new Entry(NONE, null) : record(i);
+    }
+
+    /** Returns every staged entry, by name. */
+    private TreeMap<String, Entry> entries() {
+        if (_entries == null) {
+            _entries = new TreeMap<>();
+            if (_table != null) {
+                checkBody();
+                for (int i = 0; i < _count; i += 1) {
+                    _entries.put(name(i), record(i));
+                }
+            }
+            for (Map.Entry<String, Entry> entry : _overlay.entrySet()) {
+                if (entry.getValue().kind() == NONE) {
+                    _entries.remove(entry.getKey());
+                } else {
+                    _entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return _entries;
+    }
 
-    public HashMap<String, String> getUntrackedFiles() {
-        return untrackedFiles;
+    /** Returns the index of the record for the file whose UTF-8 name is
+     *  KEY, or -1 if the table has none. */
+    private int search(byte[] key) {
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareName(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
     }
 
+    /** Compares the name of record I with KEY, byte by byte as
+     *  unsigned. */
+    private int compareName(int i, byte[] key) {
+        int pos = namePosition(i);
+        int len = _table.getInt(HEADER + i * RECORD + 4);
+        int n = Math.min(len, key.length);
+        for (int k = 0; k < n; k += 1) {
+            int cmp = Integer.compare(_table.get(pos + k) & 0xff,
+                key[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(len, key.length);
+    }
+
+    /** Returns the position in the table of the name of record I. */
+    private int namePosition(int i) {
+        return HEADER + _count * RECORD + _table.getInt(HEADER + i * RECORD);
+    }
+
+    /** Returns the name of record I. */
+    private String name(int i) {
+        byte[] bytes = new byte[_table.getInt(HEADER + i * RECORD + 4)];
+        _table.get(namePosition(i), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the entry of record I. */
+    private Entry record(int i) {
+        int pos = HEADER + i * RECORD + 8;
+        int kind = _table.get(pos);
+        if (kind != TRACKED) {
+            return new Entry(kind, null);
+        }
+        byte[] raw = new byte[ObjectId.BYTES];
+        _table.get(pos + 1, raw);
+        return new Entry(kind, ObjectId.fromBytes(raw));
+    }
+
+    /** Maps the table and checks its header. */
+    private void openTable() {
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                 StandardOpenOption.READ)) {
+            _table = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_table.capacity() < HEADER || _table.getInt(0) != MAGIC
+                || _table.getInt(4) != FORMAT_VERSION
+                || _table.getInt(HEADER - 4) != checksum(_table, 0,
+                    HEADER - 4)) {
+            throw new IllegalArgumentException("corrupt staging area");
+        }
+        _generation = _table.getLong(8);
+        _count = _table.getInt(16);
+        if ((long) HEADER + (long) _count * RECORD + _table.getInt(20)
+                != _table.capacity()) {
+            throw new IllegalArgumentException("corrupt staging area");
+        }
+    }
+
+    /** Checks the body of the table against its checksum. */
+    private void checkBody() {
+        if (_table.getInt(24) != checksum(_table, HEADER,
+                _table.capacity() - HEADER)) {
+            throw new IllegalArgumentException("corrupt staging area");
+        }
+    }
+
+    /** Reads the log of the table into the overlay. */
+    private void readLog() {
+        if (!_log.isFile()) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(_log));
+        if (in.remaining() < LOG_HEADER || in.getInt() != LOG_MAGIC
+                || in.getLong() != _generation) {
+            return;
+        }
+        _logLength = LOG_HEADER;
+        try {
+            while (in.hasRemaining()) {
+                int start = in.position();
+                int kind = in.get();
+                String fileName = Commit.readString(in);
+                ObjectId blob = ObjectId.read(in);
+                int end = in.position();
+                if (in.getInt() != checksum(in, start, end - start)) {
+                    break;
+                }
+                _overlay.put(fileName,
+                    new Entry(kind, kind == TRACKED ? blob : null));
+                _logLength = in.position();
+                _logRecords += 1;
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException
+                 | IndexOutOfBoundsException excp) {
+            return;
+        }
+    }
+
+    /** Appends the changed entries to the log, starting a new log if
+     *  there is no valid one. */
+    private void appendLog() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (_logLength == 0) {
+                out.writeInt(LOG_MAGIC);
+                out.writeLong(_generation);
+            }
+            for (String fileName : _changed) {
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream recordOut = new DataOutputStream(record);
+                Entry entry = _overlay.get(fileName);
+                recordOut.writeByte(entry.kind());
+                Commit.writeString(recordOut, fileName);
+                recordOut.write(entry.raw());
+                recordOut.close();
+                out.write(record.toByteArray());
+                out.writeInt(checksum(ByteBuffer.wrap(record.toByteArray()),
+                    0, record.size()));
+            }
+            out.close();
+            try (RandomAccessFile log = new RandomAccessFile(_log, "rw")) {
+                log.setLength(_logLength);
+                log.seek(_logLength);
+                log.write(bytes.toByteArray());
+            }
+            _logLength += bytes.size();
+            _logRecords += _changed.size();
+            _changed.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the generation of the stored table, or -1 if there is
+     *  none. */
+    private long storedGeneration() {
+        if (!_file.isFile()) {
+            return Math.max(_generation, -1);
+        }
+        try (RandomAccessFile table = new RandomAccessFile(_file, "r")) {
+            table.seek(8);
+            return Math.max(table.readLong(), _generation);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the stored log if it applies to the table
+     *  of generation GENERATION, and 0 otherwise. */
+    private long logLength(long generation) {
+        if (!_log.isFile()) {
+            return 0;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(_log, "r")) {
+            if (log.length() < LOG_HEADER || log.readInt() != LOG_MAGIC
+                    || log.readLong() != generation) {
+                return 0;
+            }
+            return log.length();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the table holding every staged entry, with generation
+     *  GENERATION. */
+    private byte[] encode(long generation) {
+        List<byte[]> names = new ArrayList<>();
+        List<Entry> values = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            names.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            values.add(entry.getValue());
+        }
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order,
+            (a, b) -> Arrays.compareUnsigned(names.get(a), names.get(b)));
+        int nameBytes = 0;
+        for (byte[] name : names) {
+            nameBytes += name.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER
+            + order.length * RECORD + nameBytes);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(generation)
+            .putInt(order.length).putInt(nameBytes);
+        out.position(HEADER);
+        int offset = 0;
+        for (int i : order) {
+            out.putInt(offset).putInt(names.get(i).length)
+                .put((byte) values.get(i).kind()).put(values.get(i).raw())
+                .put(new byte[RECORD - 9 - ObjectId.BYTES]);
+            offset += names.get(i).length;
+        }
+        for (int i : order) {
+            out.put(names.get(i));
+        }
+        out.putInt(24, checksum(out, HEADER, out.capacity() - HEADER));
+        out.putInt(HEADER - 4, checksum(out, 0, HEADER - 4));
+        return out.array();
+    }
+
+    /** Stages the entries of a staging area written in the format used
+     *  before the table, or with Java serialization before that, which
+     *  DATA holds. */
+    private void readLegacy(byte[] data) {
+        if (LegacyFormat.isSerialized(data)) {
+            LegacyFormat.SerializedStage stage =
+                LegacyFormat.readStage(data);
+            for (Map.Entry<String, String> added
+                     : stage.added().entrySet()) {
+                ObjectId blob = ObjectId.parse(added.getValue());
+                if (blob == null) {
+                    throw new IllegalArgumentException(
+                        "corrupt staging area");
+                }
+                _overlay.put(added.getKey(), new Entry(TRACKED, blob));
+            }
+            for (String removed : stage.removed()) {
+                _overlay.put(removed, new Entry(UNTRACKED, null));
+            }
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (in.get() != 1) {
+                throw new IllegalArgumentException(
+                        "unknown staging area format");
+            }
+            for (int table = 0; table < 3; table += 1) {
+                int size = in.getInt();
+                for (int i = 0; i < size; i += 1) {
+                    String fileName = Commit.readString(in);
+                    ObjectId blob = in.get() == 0 ? null : ObjectId.read(in);
+                    if (table == 0) {
+                        _overlay.put(fileName, new Entry(TRACKED, blob));
+                    } else if (table == 2) {
+                        _overlay.put(fileName, new Entry(UNTRACKED, null));
+                    }
+                }
+            }
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated staging area");
+        }
+    }
+
+    /** Returns the CRC-32 of the LENGTH bytes of BUF from POS, as an
+     *  int. */
+    private static int checksum(ByteBuffer buf, int pos, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().position(pos).limit(pos + length));
+        return (int) crc.getValue();
+    }
+
+    /** What is staged under one file name. */
+    private static class Entry {
+
+        /** NONE, TRACKED or UNTRACKED. */
+        private final int _kind;
+
+        /** UID of the staged blob if TRACKED, else null. */
+        private final ObjectId _blob;
+
+        /** An entry of kind KIND staging BLOB. */
+        Entry(int kind, ObjectId blob) {
+            _kind = kind;
+            _blob = blob;
+        }
+
+        /** Returns the kind. */
+        int kind() {
+            return _kind;
+        }
+
+        /** Returns the UID of the staged blob, or null. */
+        ObjectId blob() {
+            return _blob;
+        }
+
+        /** Returns the raw UID as stored, zero if there is none. */
+        byte[] raw() {
+            return _blob == null ? new byte[ObjectId.BYTES] : _blob.toBytes();
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+/** Tests of the staging area's table and log.
+ *  @author Janani Sriram
+ */
+public class StagingAreaTest {
+
+    /** Returns the UID of a blob holding TEXT. */
+    static ObjectId blob(String text) {
+        return ObjectId.hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Flips the bits of the byte at POS of FILE. */
+    static void flip(File file, long pos) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(pos);
+            int b = out.read();
+            out.seek(pos);
+            out.write(~b);
+        }
+    }
+
+    /** Changes staged after the table was written go to the log, leave
+     *  the table alone, and are read back by later stages. */
+    @Test
+    public void logReplay() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            StagingArea stage = new StagingArea(dir);
+            stage.addTracked("a", blob("a"));
+            stage.write();
+            File table = new File(dir, "stage");
+            File log = new File(dir, "stage.log");
+            long tableLength = table.length();
+            assertFalse(log.exists());
+
+            stage = new StagingArea(dir);
+            stage.addTracked("b", blob("b"));
+            stage.addUntracked("c");
+            stage.write();
+            stage.addTracked("a", blob("a2"));
+            stage.write();
+            assertTrue(log.isFile());
+            assertEquals(tableLength, table.length());
+
+            stage = new StagingArea(dir);
+            assertEquals(blob("a2"), stage.getTrackedFiles().get("a"));
+            assertEquals(blob("b"), stage.getTrackedFiles().get("b"));
+            assertEquals(Set.of("c"), stage.getUntrackedFiles());
+            stage.removeTracked("b");
+            stage.removeUntracked("c");
+            stage.write();
+
+            stage = new StagingArea(dir);
+            assertEquals(List.of("a"),
+                List.copyOf(stage.getTrackedFiles().keySet()));
+            assertTrue(stage.getUntrackedFiles().isEmpty());
+            assertFalse(stage.isTracked("b"));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** Once the log would pass LOG_LIMIT records it is folded into a
+     *  new table, and clearing the stage rewrites the table too. */
+    @Test
+    public void logFolds() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            StagingArea stage = new StagingArea(dir);
+            stage.write();
+            File log = new File(dir, "stage.log");
+            for (int i = 0; i < StagingArea.LOG_LIMIT; i += 1) {
+                stage.addTracked("f" + i, blob("f" + i));
+            }
+            stage.write();
+            assertTrue(log.isFile());
+            stage.addUntracked("one more");
+            stage.write();
+            assertFalse(log.exists());
+
+            stage = new StagingArea(dir);
+            assertEquals(StagingArea.LOG_LIMIT,
+                stage.getTrackedFiles().size());
+            assertTrue(stage.isUntracked("one more"));
+            stage.clear();
+            stage.write();
+            assertTrue(new StagingArea(dir).isEmpty());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A torn or corrupted last log record is dropped and the records
+     *  before it kept; a log that does not end where it was read is not
+     *  appended to, but folded into a new table. */
+    @Test
+    public void tornLogRecordDropped() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            StagingArea stage = new StagingArea(dir);
+            stage.write();
+            stage.addTracked("kept", blob("kept"));
+            stage.write();
+            stage.addTracked("torn", blob("torn"));
+            stage.write();
+            File log = new File(dir, "stage.log");
+            try (RandomAccessFile out = new RandomAccessFile(log, "rw")) {
+                out.setLength(out.length() - 3);
+            }
+            stage = new StagingArea(dir);
+            assertTrue(stage.isTracked("kept"));
+            assertFalse(stage.isTracked("torn"));
+
+            stage.addTracked("next", blob("next"));
+            stage.write();
+            assertFalse(log.exists());
+            stage.addTracked("flipped", blob("flipped"));
+            stage.write();
+            flip(log, log.length() - 1);
+            stage = new StagingArea(dir);
+            assertEquals(Set.of("kept", "next"),
+                stage.getTrackedFiles().keySet());
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A table whose header or body fails its checksum is rejected. */
+    @Test
+    public void corruptTableRejected() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            StagingArea stage = new StagingArea(dir);
+            stage.addTracked("a", blob("a"));
+            stage.write();
+            File table = new File(dir, "stage");
+
+            flip(table, table.length() - 1);
+            StagingArea corrupt = new StagingArea(dir);
+            try {
+                corrupt.getTrackedFiles();
+                fail("corrupt body accepted");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("corrupt staging area", excp.getMessage());
+            }
+            flip(table, table.length() - 1);
+
+            flip(table, 12);
+            try {
+                new StagingArea(dir);
+                fail("corrupt header accepted");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("corrupt staging area", excp.getMessage());
+            }
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A staging area in the format used before the table is read, and
+     *  replaced by a table when written. */
+    @Test
+    public void legacyStageRead() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(1);
+            out.writeInt(1);
+            Commit.writeString(out, "added");
+            out.writeByte(1);
+            blob("added").write(out);
+            out.writeInt(0);
+            out.writeInt(1);
+            Commit.writeString(out, "removed");
+            out.writeByte(0);
+            out.close();
+            File legacy = new File(dir, "stage.txt");
+            Utils.writeContents(legacy, bytes.toByteArray());
+
+            StagingArea stage = new StagingArea(dir);
+            assertEquals(blob("added"), stage.getTrackedFiles().get("added"));
+            assertTrue(stage.isUntracked("removed"));
+            stage.write();
+            assertFalse(legacy.exists());
+            stage = new StagingArea(dir);
+            assertEquals(blob("added"), stage.getTrackedFiles().get("added"));
+            assertTrue(stage.isUntracked("removed"));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Cached stat data of working files, kept in staging/index next to the
+ *  stage.  For each path the index records the file's size, modification
+ *  time, inode and blob UID when it was last hashed; while the first
+ *  three are unchanged the file is assumed to still hold that blob, so
+ *  status and add only rehash files that were touched.
+ *
+ *  A file modified in the same clock tick as the index was written could
+ *  change again without its stat data changing, so entries whose mtime
+ *  is not older than the index file itself are never trusted.
+ *
+ *  Stored as a format version byte, an entry count, and the entries
+ *  sorted by path: the path, size, mtime in nanoseconds, inode, and the
+ *  raw 20-byte blob UID.
+ *  @author Janani Sriram
+ */
+class StatIndex {
+
+    /** Current version of the index encoding. */
+    static final int FORMAT_VERSION = 1;
+
+    /** File holding the index. */
+    private final File _file;
+
+    /** Entries by path. */
+    private final TreeMap<String, Entry> _entries = new TreeMap<>();
+
+    /** Modification time of _file when it was read, in nanoseconds. */
+    private long _indexTime = Long.MIN_VALUE;
+
+    /** True iff the entries differ from those in _file. */
+    private boolean _dirty;
+
+    /** The index stored in FILE, empty if FILE does not exist. */
+    StatIndex(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        _indexTime = WorkTree.stat(file)[1];
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        try {
+            if (in.get() != FORMAT_VERSION) {
+                return;
+            }
+            for (int count = in.getInt(); count > 0; count -= 1) {
+                String path = Commit.readString(in);
+                long size = in.getLong();
+                long mtime = in.getLong();
+                long inode = in.getLong();
+                _entries.put(path, new Entry(size, mtime, inode,
+                        ObjectId.read(in)));
+            }
+        } catch (BufferUnderflowException excp) {
+            _entries.clear();
+            _dirty = true;
+        }
+    }
+
+    /** Returns the blob UID recorded under PATH if working file FILE
+     *  still has the stat data recorded with it, and null otherwise. */
+    ObjectId cached(String path, File file) {
+        if (!_entries.containsKey(path) || !file.isFile()) {
+            return null;
+        }
+        return cached(path, WorkTree.stat(file));
+    }
+
+    /** Returns the blob UID recorded under PATH if STAT (size, mtime,
+     *  inode) matches what was recorded with it, and null otherwise. */
+    private ObjectId cached(String path, long[] stat) {
+        Entry entry = _entries.get(path);
+        if (entry == null || !entry.matches(stat) || stat[1] >= _indexTime) {
+            return null;
+        }
+        return entry._blob;
+    }
+
+    /** Returns the blob UID of working file FILE, rehashing it with STORE
+     *  only if its stat data changed. */
+    ObjectId blobId(WorkTree.Entry file, ObjectStore store) {
+        ObjectId blob = cached(file.path(), file.stat());
+        if (blob == null) {
+            blob = store.hashFile(file.file());
+            long[] stat = file.stat();
+            _entries.put(file.path(),
+                    new Entry(stat[0], stat[1], stat[2], blob));
+            _dirty = true;
+        }
+        return blob;
+    }
+
+    /** Records that working file FILE, under PATH, holds blob BLOB. */
+    void record(String path, File file, ObjectId blob) {
+        long[] stat = WorkTree.stat(file);
+        _entries.put(path, new Entry(stat[0], stat[1], stat[2], blob));
+        _dirty = true;
+    }
+
+    /** Drops any entry for PATH. */
+    void forget(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Writes the index back if it changed. */
+    void write() {
+        if (!_dirty) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                Commit.writeString(out, e.getKey());
+                out.writeLong(e.getValue()._size);
+                out.writeLong(e.getValue()._mtime);
+                out.writeLong(e.getValue()._inode);
+                e.getValue()._blob.write(out);
+            }
+            out.close();
+            Utils.writeContents(_file, bytes.toByteArray());
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing index.");
+        }
+        _dirty = false;
+    }
+
+    /** Stat data and blob UID recorded for one path. */
+    private static class Entry {
+
+        /** Size in bytes. */
+        private final long _size;
+
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+
+        /** Inode number, or 0. */
+        private final long _inode;
+
+        /** Blob UID of the contents. */
+        private final ObjectId _blob;
+
+        /** An entry for a file of SIZE bytes modified at MTIME with
+         *  inode INODE, holding blob BLOB. */
+        Entry(long size, long mtime, long inode, ObjectId blob) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _blob = blob;
+        }
+
+        /** Returns true iff STAT (size, mtime, inode) matches this. */
+        boolean matches(long[] stat) {
+            return stat[0] == _size && stat[1] == _mtime
+                    && stat[2] == _inode;
+        }
+    }
+}
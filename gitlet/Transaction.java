@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** A group of file writes made durable together, so that a crash leaves
+ *  either all of them or none visible.  Objects and refs are first
+ *  written to temporary files next to their destinations.  On commit,
+ *  every temporary file, and every existing file the writes depend on,
+ *  is flushed to disk in one batch, the flushes running concurrently so
+ *  the file system can fold them into a single journal commit.  Then the
+ *  objects are renamed into place and their directories flushed, and only
+ *  after that the refs, so a ref never names an object that is not on
+ *  disk.  Each rename is atomic.
+ *  @author Janani Sriram
+ */
+class Transaction {
+
+    /** Temporary file of each object to write, by destination. */
+    private final LinkedHashMap<File, File> _objects = new LinkedHashMap<>();
+
+    /** Temporary file of each ref to write, by destination. */
+    private final LinkedHashMap<File, File> _refs = new LinkedHashMap<>();
+
+    /** Existing files that must be on disk before the refs change. */
+    private final Set<File> _synced = new LinkedHashSet<>();
+
+    /** Schedules writing DATA to the object file DEST. */
+    void writeObject(File dest, byte[] data) {
+        stage(_objects, dest, data);
+    }
+
+    /** Schedules replacing the ref (or other small state) file DEST with
+     *  DATA. */
+    void writeRef(File dest, byte[] data) {
+        stage(_refs, dest, data);
+    }
+
+    /** Schedules flushing the existing file FILE with the others. */
+    void sync(File file) {
+        _synced.add(file);
+    }
+
+    /** Returns the temporary file holding the object to be written to
+     *  DEST, or null if there is none. */
+    File pending(File dest) {
+        return _objects.get(dest);
+    }
+
+    /** Returns a new, empty temporary file in directory DIR, creating
+     *  DIR if need be.  Its name is unique, so that writers in other
+     *  processes, or a transaction cut short earlier, never share it. */
+    static File tempFile(File dir) {
+        dir.mkdirs();
+        try {
+            return File.createTempFile("tmp-", null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes DATA to a temporary file for DEST and records it in
+     *  PENDING, replacing and discarding any earlier one. */
+    private void stage(Map<File, File> pending, File dest, byte[] data) {
+        File tmp = tempFile(dest.getParentFile());
+        try {
+            Utils.writeContents(tmp, data);
+        } catch (RuntimeException excp) {
+            tmp.delete();
+            throw excp;
+        }
+        File old = pending.put(dest, tmp);
+        if (old != null) {
+            old.delete();
+        }
+    }
+
+    /** Makes every scheduled write durable and visible, objects before
+     *  refs.  On failure, discards whatever was not yet renamed and
+     *  rethrows. */
+    void commit() {
+        try {
+            List<File> flush = new ArrayList<>(_synced);
+            flush.addAll(_objects.values());
+            flush.addAll(_refs.values());
+            flush.parallelStream().forEach(Transaction::force);
+            install(_objects);
+            install(_refs);
+        } catch (RuntimeException excp) {
+            abort();
+            throw excp;
+        }
+    }
+
+    /** Discards every scheduled write that was not made visible. */
+    void abort() {
+        for (File tmp : _objects.values()) {
+            tmp.delete();
+        }
+        for (File tmp : _refs.values()) {
+            tmp.delete();
+        }
+        _objects.clear();
+        _refs.clear();
+    }
+
+    /** Renames each temporary file in PENDING to its destination, then
+     *  flushes the directories holding them. */
+    private static void install(Map<File, File> pending) {
+        Set<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, File> write : pending.entrySet()) {
+            try {
+                Files.move(write.getValue().toPath(),
+                    write.getKey().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            dirs.add(write.getKey().getParentFile());
+        }
+        for (File dir : dirs) {
+            forceDirectory(dir);
+        }
+    }
+
+    /** Flushes the contents of FILE to disk. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Flushes the entries of directory DIR to disk, where the platform
+     *  allows it. */
+    private static void forceDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                 StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+}
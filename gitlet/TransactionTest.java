@@ -0,0 +1,145 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Tests that a transaction writing an object, the refs, the stage and
+ *  the pending-commit file makes all of them visible or none.
+ *  @author Janani Sriram
+ */
+public class TransactionTest {
+
+    /** Returns the temporary files anywhere under DIR. */
+    static List<Path> temps(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            return files.filter(p -> p.toString().endsWith(".tmp"))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Makes a repository in DIR whose master branch is at commit id
+     *  "before" and whose stage has old.txt staged. */
+    static void setUp(File dir) {
+        Refs refs = new Refs(dir);
+        refs.init(RefsTest.id("before"));
+        refs.save();
+        StagingArea stage = new StagingArea(dir);
+        stage.addTracked("old.txt", RefsTest.id("old"));
+        stage.write();
+    }
+
+    /** Schedules in TXN what a commit writes to the repository in DIR:
+     *  a blob, master moved to commit id "after", the pending-commit
+     *  file, and an empty stage.  Returns the id of the blob. */
+    static ObjectId schedule(File dir, Transaction txn) {
+        ObjectStore store = new ObjectStore(dir);
+        byte[] data = "new".getBytes(StandardCharsets.UTF_8);
+        ObjectId blob = ObjectId.hash(data);
+        store.begin(txn);
+        try {
+            store.write(blob, ObjectStore.BLOB, data);
+        } finally {
+            store.end();
+        }
+        Refs refs = new Refs(dir);
+        refs.set("master", RefsTest.id("after"));
+        txn.writeRef(new File(dir, "pending-commit"),
+            RefsTest.id("after").name().getBytes(StandardCharsets.UTF_8));
+        refs.save(txn);
+        StagingArea stage = new StagingArea(dir);
+        stage.clear();
+        stage.write(txn);
+        return blob;
+    }
+
+    /** Asserts that the repository in DIR is as setUp left it and that
+     *  BLOB is not stored. */
+    static void assertUnchanged(File dir, ObjectId blob) {
+        assertEquals(RefsTest.id("before"), new Refs(dir).head());
+        assertEquals(List.of("old.txt"), List.copyOf(
+            new StagingArea(dir).getTrackedFiles().keySet()));
+        assertFalse(new File(dir, "pending-commit").exists());
+        assertFalse(new ObjectStore(dir).contains(blob));
+    }
+
+    /** An aborted transaction changes nothing and leaves no temporary
+     *  files behind. */
+    @Test
+    public void abortChangesNothing() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            setUp(dir);
+            Transaction txn = new Transaction();
+            ObjectId blob = schedule(dir, txn);
+            assertFalse(temps(dir).isEmpty());
+            txn.abort();
+            assertUnchanged(dir, blob);
+            assertEquals(List.of(), temps(dir));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A transaction whose flush fails is rolled back before any file is
+     *  renamed into place, and leaves no temporary files behind. */
+    @Test
+    public void failedCommitChangesNothing() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            setUp(dir);
+            Transaction txn = new Transaction();
+            ObjectId blob = schedule(dir, txn);
+            txn.sync(new File(dir, "missing"));
+            try {
+                txn.commit();
+                fail("commit succeeded");
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+            assertUnchanged(dir, blob);
+            assertEquals(List.of(), temps(dir));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+
+    /** A transaction cut short before committing is invisible, and its
+     *  leftover temporary files do not disturb later transactions.  Two
+     *  transactions writing the same file at once each install their
+     *  own contents. */
+    @Test
+    public void interruptedTransactionIsInvisible() throws IOException {
+        File dir = ChunkerTest.tempDir();
+        try {
+            setUp(dir);
+            ObjectId blob = schedule(dir, new Transaction());
+            List<Path> left = temps(dir);
+            assertUnchanged(dir, blob);
+
+            Transaction first = new Transaction();
+            Transaction second = new Transaction();
+            schedule(dir, first);
+            File refs = new File(dir, "refs");
+            second.writeRef(refs, Utils.readContents(refs));
+            first.commit();
+            assertEquals(RefsTest.id("after"), new Refs(dir).head());
+            assertTrue(new StagingArea(dir).isEmpty());
+            assertTrue(new File(dir, "pending-commit").isFile());
+            assertTrue(new ObjectStore(dir).contains(blob));
+            second.commit();
+            assertEquals(RefsTest.id("before"), new Refs(dir).head());
+            assertEquals(left, temps(dir));
+        } finally {
+            ChunkerTest.delete(dir);
+        }
+    }
+}
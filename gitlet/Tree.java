@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory of a committed snapshot.  Each tree lists the files and
+ *  subdirectories directly inside one directory, mapping each name to a
+ *  blob UID or to the UID of the subdirectory's tree, and is stored as
+ *  an object named by the SHA-1 of its encoding.  A commit names only
+ *  its root tree, so commits share every directory that did not change,
+ *  a new commit writes only the trees on the paths it changed, and two
+ *  snapshots are compared without descending into subtrees whose UIDs
+ *  are equal.
+ *
+ *  Encoded as a format version byte, an entry count, and the entries
+ *  sorted by name: the name, a kind byte (FILE or DIR) and the raw
+ *  20-byte UID.
+ *  @author Janani Sriram
+ */
+class Tree {
+
+    /** Current version of the tree encoding. */
+    static final int FORMAT_VERSION = 1;
+
+    /** Kind of an entry naming a blob. */
+    static final int FILE = 0;
+
+    /** Kind of an entry naming a subtree. */
+    static final int DIR = 1;
+
+    /** Kind of each entry, by name. */
+    private final TreeMap<String, Integer> _kinds = new TreeMap<>();
+
+    /** UID of each entry, by name. */
+    private final TreeMap<String, ObjectId> _ids = new TreeMap<>();
+
+    /** Returns the UID of the root tree of the snapshot holding FILES,
+     *  a map from path to blob UID, storing its trees in STORE. */
+    static ObjectId write(ObjectStore store, Map<String, ObjectId> files) {
+        return update(store, null, files);
+    }
+
+    /** Returns the UID of the root tree of the snapshot ROOT (a tree
+     *  UID, or null for an empty snapshot) with CHANGES applied.  Each
+     *  change maps a path to its new blob UID, or to null to remove it;
+     *  a file may replace a directory of the same name or the reverse.
+     *  Only the trees of directories containing a change are rewritten;
+     *  they are stored in STORE. */
+    static ObjectId update(ObjectStore store, ObjectId root,
+                           Map<String, ObjectId> changes) {
+        ObjectId result = updateDir(store, root, changes);
+        return result != null ? result : new Tree().store(store);
+    }
+
+    /** As for update, but returns null if the resulting directory is
+     *  empty. */
+    private static ObjectId updateDir(ObjectStore store, ObjectId dir,
+                                      Map<String, ObjectId> changes) {
+        Tree tree = read(store, dir);
+        TreeMap<String, ObjectId> here = new TreeMap<>();
+        TreeMap<String, Map<String, ObjectId>> nested = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                here.put(path, change.getValue());
+            } else {
+                nested.computeIfAbsent(path.substring(0, slash),
+                    k -> new HashMap<>()).put(path.substring(slash + 1),
+                    change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, ObjectId>> sub
+                 : nested.entrySet()) {
+            String name = sub.getKey();
+            ObjectId old = tree.kind(name) == DIR ? tree._ids.get(name) : null;
+            tree.put(name, DIR, updateDir(store, old, sub.getValue()));
+        }
+        for (Map.Entry<String, ObjectId> change : here.entrySet()) {
+            String name = change.getKey();
+            if (change.getValue() != null || tree.kind(name) == FILE) {
+                tree.put(name, FILE, change.getValue());
+            }
+        }
+        return tree._ids.isEmpty() ? null : tree.store(store);
+    }
+
+    /** Returns every file of the snapshot whose root tree is ROOT, as a
+     *  map from path to blob UID, reading trees from STORE. */
+    static HashMap<String, ObjectId> flatten(ObjectStore store,
+                                             ObjectId root) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        flatten(store, root, "", result);
+        return result;
+    }
+
+    /** Adds the files under tree DIR, whose path is PREFIX, to RESULT. */
+    private static void flatten(ObjectStore store, ObjectId dir,
+                                String prefix,
+                                Map<String, ObjectId> result) {
+        Tree tree = read(store, dir);
+        for (Map.Entry<String, ObjectId> entry : tree._ids.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (tree.kind(entry.getKey()) == DIR) {
+                flatten(store, entry.getValue(), path + "/", result);
+            } else {
+                result.put(path, entry.getValue());
+            }
+        }
+    }
+
+    /** Returns the blob UID of file PATH in the snapshot whose root tree
+     *  is ROOT, or null if it has no such file.  Only the trees on PATH
+     *  are read. */
+    static ObjectId lookup(ObjectStore store, ObjectId root, String path) {
+        Tree tree = read(store, root);
+        String[] names = path.split("/");
+        for (int i = 0; i < names.length - 1; i += 1) {
+            if (tree.kind(names[i]) != DIR) {
+                return null;
+            }
+            tree = read(store, tree._ids.get(names[i]));
+        }
+        String name = names[names.length - 1];
+        return tree.kind(name) == FILE ? tree._ids.get(name) : null;
+    }
+
+    /** Returns the files that differ between the snapshots whose root
+     *  trees are FROM and TO, mapped to their blob UIDs in TO, or to
+     *  null for files TO does not have.  Subtrees with equal UIDs are
+     *  skipped. */
+    static TreeMap<String, ObjectId> diff(ObjectStore store, ObjectId from,
+                                          ObjectId to) {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        diff(store, from, to, "", result);
+        return result;
+    }
+
+    /** Adds the differences between trees FROM and TO, whose path is
+     *  PREFIX, to RESULT. */
+    private static void diff(ObjectStore store, ObjectId from, ObjectId to,
+                             String prefix, Map<String, ObjectId> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = read(store, from);
+        Tree b = read(store, to);
+        TreeSet<String> names = new TreeSet<>(a._ids.keySet());
+        names.addAll(b._ids.keySet());
+        for (String name : names) {
+            String path = prefix + name;
+            ObjectId idA = a._ids.get(name);
+            ObjectId idB = b._ids.get(name);
+            boolean dirA = a.kind(name) == DIR;
+            boolean dirB = b.kind(name) == DIR;
+            if (dirA && dirB) {
+                diff(store, idA, idB, path + "/", result);
+                continue;
+            }
+            if (dirA) {
+                for (String removed : flatten(store, idA).keySet()) {
+                    result.put(path + "/" + removed, null);
+                }
+            } else if (idA != null && (idB == null || dirB)) {
+                result.put(path, null);
+            }
+            if (dirB) {
+                for (Map.Entry<String, ObjectId> added
+                         : flatten(store, idB).entrySet()) {
+                    result.put(path + "/" + added.getKey(), added.getValue());
+                }
+            } else if (idB != null && (dirA || !idB.equals(idA))) {
+                result.put(path, idB);
+            }
+        }
+    }
+
+    /** Returns the tree with UID ID from STORE, or an empty tree if ID is
+     *  null. */
+    private static Tree read(ObjectStore store, ObjectId id) {
+        return id == null ? new Tree() : decode(id, store.read(id));
+    }
+
+    /** Returns the kind of entry NAME, or -1 if there is none. */
+    private int kind(String name) {
+        Integer kind = _kinds.get(name);
+        return kind == null ? -1 : kind;
+    }
+
+    /** Sets entry NAME to be of kind KIND with UID ID, or removes it if
+     *  ID is null. */
+    private void put(String name, int kind, ObjectId id) {
+        if (id == null) {
+            _kinds.remove(name);
+            _ids.remove(name);
+        } else {
+            _kinds.put(name, kind);
+            _ids.put(name, id);
+        }
+    }
+
+    /** Writes this tree to STORE, unless it is already there, and
+     *  returns its UID. */
+    private ObjectId store(ObjectStore store) {
+        byte[] data = encode();
+        ObjectId id = ObjectId.hash(data);
+        if (!store.contains(id)) {
+            store.write(id, ObjectStore.TREE, data);
+        }
+        return id;
+    }
+
+    /** Returns the encoding of this tree. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(_ids.size());
+            for (Map.Entry<String, ObjectId> entry : _ids.entrySet()) {
+                Commit.writeString(out, entry.getKey());
+                out.writeByte(kind(entry.getKey()));
+                entry.getValue().write(out);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing tree.");
+        }
+    }
+
+    /** Returns the tree with UID ID encoded in DATA. */
+    static Tree decode(ObjectId id, byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            if (in.get() != FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                    "unknown tree format in " + id);
+            }
+            Tree result = new Tree();
+            for (int count = in.getInt(); count > 0; count -= 1) {
+                String name = Commit.readString(in);
+                int kind = in.get();
+                result.put(name, kind, ObjectId.read(in));
+            }
+            return result;
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated tree " + id);
+        }
+    }
+}
@@ -12,7 +12,12 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, ChunkerTest.class,
+            DeltaTest.class, CommitGraphTest.class, MergeBaseTest.class,
+            DaemonTest.class, ShardTest.class, CommitJournalTest.class,
+            RefsTest.class, StagingAreaTest.class, DiffTest.class,
+            LegacyFormatTest.class, CacheTest.class, MaterializerTest.class,
+            TransactionTest.class, ObjectIdTest.class));
     }
 
     /** A dummy test to avoid complaint. */
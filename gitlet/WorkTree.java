@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/** A snapshot of the files in a working tree.  The tree is walked with
+ *  one fork-join task per directory, so subdirectories are listed and
+ *  their files stat'ed in parallel; the metadata folder is skipped.
+ *  Paths are relative to the root, use '/' as separator, and are the
+ *  names under which files are tracked.
+ *  @author Janani Sriram
+ */
+class WorkTree {
+
+    /** Name of the metadata folder, never scanned. */
+    static final String GITLET_DIR = ".gitlet";
+
+    /** Files in the tree by path, in path order. */
+    private final TreeMap<String, Entry> _files;
+
+    /** A snapshot of FILES. */
+    private WorkTree(TreeMap<String, Entry> files) {
+        _files = files;
+    }
+
+    /** Returns a snapshot of the working tree rooted at ROOT. */
+    static WorkTree scan(File root) {
+        List<Entry> found =
+            ForkJoinPool.commonPool().invoke(new Scan(root.toPath(), ""));
+        found.sort(Comparator.comparing(Entry::path));
+        TreeMap<String, Entry> files = new TreeMap<>();
+        for (Entry entry : found) {
+            files.put(entry.path(), entry);
+        }
+        return new WorkTree(files);
+    }
+
+    /** Returns the paths of the files in the tree, in order. */
+    Iterable<String> paths() {
+        return _files.keySet();
+    }
+
+    /** Returns the entry for PATH, or null if there is no such file. */
+    Entry get(String path) {
+        return _files.get(path);
+    }
+
+    /** Returns the files of the tree as Files, in path order. */
+    ArrayList<File> files() {
+        ArrayList<File> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : _files.entrySet()) {
+            result.add(entry.getValue().file());
+        }
+        return result;
+    }
+
+    /** Returns the size, mtime in nanoseconds and inode (0 where the
+     *  platform has none) of FILE. */
+    static long[] stat(File file) {
+        try {
+            return stat(file.toPath(), Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the size, mtime in nanoseconds and inode of PATH, whose
+     *  basic attributes are ATTRS. */
+    private static long[] stat(Path path, BasicFileAttributes attrs) {
+        long inode;
+        try {
+            inode = ((Number) Files.getAttribute(path, "unix:ino",
+                LinkOption.NOFOLLOW_LINKS)).longValue();
+        } catch (UnsupportedOperationException | IllegalArgumentException
+                 | IOException excp) {
+            inode = 0;
+        }
+        return new long[] {attrs.size(),
+            attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode};
+    }
+
+    /** One regular file of the tree and its stat data. */
+    static class Entry {
+
+        /** Path relative to the root. */
+        private final String _path;
+
+        /** The file itself. */
+        private final File _file;
+
+        /** Size, mtime in nanoseconds and inode. */
+        private final long[] _stat;
+
+        /** An entry for FILE at PATH with stat data STAT. */
+        Entry(String path, File file, long[] stat) {
+            _path = path;
+            _file = file;
+            _stat = stat;
+        }
+
+        /** Returns the path relative to the root. */
+        String path() {
+            return _path;
+        }
+
+        /** Returns the file. */
+        File file() {
+            return _file;
+        }
+
+        /** Returns the size, mtime in nanoseconds and inode. */
+        long[] stat() {
+            return _stat;
+        }
+    }
+
+    /** Lists one directory, forking a task for each subdirectory. */
+    private static class Scan extends RecursiveTask<List<Entry>> {
+
+        /** Scans are never serialized; this keeps the compiler quiet. */
+        private static final long serialVersionUID = 1L;
+
+        /** Directory to list. */
+        private final Path _dir;
+
+        /** Path of _dir relative to the root, "" for the root itself. */
+        private final String _prefix;
+
+        /** A task listing DIR, whose relative path is PREFIX. */
+        Scan(Path dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> result = new ArrayList<>();
+            List<Scan> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> stream =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    BasicFileAttributes attrs = Files.readAttributes(child,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (!name.equals(GITLET_DIR)) {
+                            Scan sub = new Scan(child, _prefix + name + "/");
+                            sub.fork();
+                            subdirs.add(sub);
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        result.add(new Entry(_prefix + name, child.toFile(),
+                            stat(child, attrs)));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Scan sub : subdirs) {
+                result.addAll(sub.join());
+            }
+            return result;
+        }
+    }
+}